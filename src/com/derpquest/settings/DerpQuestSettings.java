@@ -20,6 +20,7 @@ import android.app.ActionBar;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Looper;
 import android.util.TypedValue;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -27,6 +28,8 @@ import android.view.MenuItem;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.FrameLayout;
 import androidx.viewpager.widget.ViewPager;
 
 import androidx.fragment.app.Fragment;
@@ -46,6 +49,13 @@ import com.derpquest.settings.tabs.SystemMiscTab;
 
 import com.derpquest.settings.navigation.BubbleNavigationConstraintView;
 import com.derpquest.settings.navigation.BubbleNavigationChangeListener;
+import com.derpquest.settings.utils.PreferenceInflationBenchmark;
+import com.derpquest.settings.utils.ScreenTracer;
+import com.derpquest.settings.utils.SystemUiRestarter;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
 
 public class DerpQuestSettings extends SettingsPreferenceFragment {
 
@@ -54,6 +64,13 @@ public class DerpQuestSettings extends SettingsPreferenceFragment {
     Context mContext;
 //    View view;
 
+    @Override
+    public void onAttach(Context context) {
+        // Installed before our own onCreate so the entry point is traced too
+        ScreenTracer.install(getActivity());
+        super.onAttach(context);
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -69,7 +86,9 @@ public class DerpQuestSettings extends SettingsPreferenceFragment {
         BubbleNavigationConstraintView bubbleNavigationConstraintView =  (BubbleNavigationConstraintView) view.findViewById(R.id.bottom_navigation_view_constraint);
         ViewPager viewPager = view.findViewById(R.id.viewpager);
         PagerAdapter mPagerAdapter = new PagerAdapter(getFragmentManager());
+        mPagerAdapter.setReady(viewPager.getCurrentItem());
         viewPager.setAdapter(mPagerAdapter);
+        prefetchAfterFirstFrame(view, viewPager, mPagerAdapter);
 
         bubbleNavigationConstraintView.setNavigationChangeListener(new BubbleNavigationChangeListener() {
             @Override
@@ -95,6 +114,7 @@ public class DerpQuestSettings extends SettingsPreferenceFragment {
 
             @Override
             public void onPageSelected(int i) {
+                mPagerAdapter.setReady(i);
                 bubbleNavigationConstraintView.setCurrentActiveItem(i);
             }
 
@@ -108,28 +128,61 @@ public class DerpQuestSettings extends SettingsPreferenceFragment {
         return view;
     }
 
+    /**
+     * Creates tabs only when they are shown. ViewPager always populates the pages
+     * next to the current one, so those get an empty {@link PendingTab} until the
+     * first frame is drawn and the main looper goes idle, or until they are selected.
+     */
     class PagerAdapter extends FragmentPagerAdapter {
 
         String titles[] = getTitles();
-        private Fragment frags[] = new Fragment[titles.length];
+        private final boolean mReady[] = new boolean[titles.length];
 
         PagerAdapter(FragmentManager fm) {
             super(fm);
-            frags[0] = new ActionsTab();
-            frags[1] = new InterfaceTab();
-            frags[2] = new StatusBarTab();
-            frags[3] = new LockScreenTab();
-            frags[4] = new SystemMiscTab();
+        }
+
+        void setReady(int position) {
+            if (position < 0 || position >= mReady.length || mReady[position]) {
+                return;
+            }
+            mReady[position] = true;
+            notifyDataSetChanged();
         }
 
         @Override
         public Fragment getItem(int position) {
-            return frags[position];
+            if (!mReady[position]) {
+                return new PendingTab();
+            }
+            switch (position) {
+                case 0:
+                    return new ActionsTab();
+                case 1:
+                    return new InterfaceTab();
+                case 2:
+                    return new StatusBarTab();
+                case 3:
+                    return new LockScreenTab();
+                default:
+                    return new SystemMiscTab();
+            }
+        }
+
+        @Override
+        public long getItemId(int position) {
+            // Fragments are looked up by item id, keep placeholders apart from real tabs
+            return mReady[position] ? position : position + titles.length;
+        }
+
+        @Override
+        public int getItemPosition(Object object) {
+            return object instanceof PendingTab ? POSITION_NONE : POSITION_UNCHANGED;
         }
 
         @Override
         public int getCount() {
-            return frags.length;
+            return titles.length;
         }
 
         @Override
@@ -138,6 +191,36 @@ public class DerpQuestSettings extends SettingsPreferenceFragment {
         }
     }
 
+    /**
+     * Empty page standing in for a tab that hasn't been created yet.
+     */
+    public static class PendingTab extends Fragment {
+        @Override
+        public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                Bundle savedInstanceState) {
+            return new FrameLayout(inflater.getContext());
+        }
+    }
+
+    private void prefetchAfterFirstFrame(View view, ViewPager viewPager, PagerAdapter adapter) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted from pre-draw, so this runs once the frame is out
+                view.post(() -> Looper.myQueue().addIdleHandler(() -> {
+                    if (isAdded()) {
+                        int current = viewPager.getCurrentItem();
+                        adapter.setReady(current - 1);
+                        adapter.setReady(current + 1);
+                    }
+                    return false;
+                }));
+                return true;
+            }
+        });
+    }
+
     private String[] getTitles() {
         String titleString[];
         titleString = new String[]{
@@ -150,6 +233,16 @@ public class DerpQuestSettings extends SettingsPreferenceFragment {
         return titleString;
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        ScreenTracer.dump(prefix, writer);
+        SystemUiRestarter.dump(prefix, writer);
+        if (args != null && Arrays.asList(args).contains(PreferenceInflationBenchmark.DUMP_ARG)) {
+            PreferenceInflationBenchmark.run(getContext(), prefix, writer);
+        }
+    }
+
     @Override
     public int getMetricsCategory() {
         return MetricsProto.MetricsEvent.DERP;
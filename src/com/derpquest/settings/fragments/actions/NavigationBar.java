@@ -37,6 +37,8 @@ import com.android.internal.util.derp.ActionUtils;
 
 import com.derp.support.preference.SystemSettingSwitchPreference;
 
+import com.derpquest.settings.utils.OverlayStateIndex;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -69,7 +71,8 @@ public class NavigationBar extends SettingsPreferenceFragment implements
         mPixelNavAnimation = findPreference(PIXEL_NAV_ANIMATION);
         mNavbarVisibility = findPreference(NAVBAR_VISIBILITY);
 
-        if (!derpUtils.isThemeEnabled("com.android.internal.systemui.navbar.threebutton")) {
+        if (!OverlayStateIndex.getInstance(getContext())
+                .isEnabled("com.android.internal.systemui.navbar.threebutton")) {
             prefScreen.removePreference(mLayoutSettings);
             prefScreen.removePreference(mSwapNavButtons);
             prefScreen.removePreference(mPixelNavAnimation);
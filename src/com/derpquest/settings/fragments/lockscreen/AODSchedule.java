@@ -16,7 +16,6 @@
 package com.derpquest.settings.fragments.lockscreen;
 
 import static com.derpquest.settings.fragments.lockscreen.LockscreenGeneral.MODE_DISABLED;
-import static com.derpquest.settings.fragments.lockscreen.LockscreenGeneral.MODE_NIGHT;
 import static com.derpquest.settings.fragments.lockscreen.LockscreenGeneral.MODE_TIME;
 import static com.derpquest.settings.fragments.lockscreen.LockscreenGeneral.MODE_MIXED_SUNSET;
 import static com.derpquest.settings.fragments.lockscreen.LockscreenGeneral.MODE_MIXED_SUNRISE;
@@ -41,8 +40,11 @@ import com.android.settingslib.search.SearchIndexable;
 
 import com.derp.support.preference.SecureSettingListPreference;
 
-import java.time.format.DateTimeFormatter;
+import com.derpquest.settings.utils.AutoSchedule;
+import com.derpquest.settings.utils.SolarCalculator;
+
 import java.time.LocalTime;
+import java.time.ZoneId;
 
 @SearchIndexable
 public class AODSchedule extends SettingsPreferenceFragment implements
@@ -93,32 +95,22 @@ public class AODSchedule extends SettingsPreferenceFragment implements
 
     @Override
     public boolean onPreferenceClick(Preference preference) {
-        String[] times = getCustomTimeSetting();
+        AutoSchedule schedule = getSchedule(Integer.parseInt(mModePref.getValue()));
         boolean isSince = preference == mSincePref;
-        int hour, minute;
         TimePickerDialog.OnTimeSetListener listener = (view, hourOfDay, minute1) -> {
             updateTimeSetting(isSince, hourOfDay, minute1);
         };
-        if (isSince) {
-            String[] sinceValues = times[0].split(":", 0);
-            hour = Integer.parseInt(sinceValues[0]);
-            minute = Integer.parseInt(sinceValues[1]);
-        } else {
-            String[] tillValues = times[1].split(":", 0);
-            hour = Integer.parseInt(tillValues[0]);
-            minute = Integer.parseInt(tillValues[1]);
-        }
+        LocalTime time = isSince ? schedule.getSince() : schedule.getTill();
         TimePickerDialog dialog = new TimePickerDialog(getContext(), listener,
-                hour, minute, DateFormat.is24HourFormat(getContext()));
+                time.getHour(), time.getMinute(), DateFormat.is24HourFormat(getContext()));
         dialog.show();
         return true;
     }
 
-    private String[] getCustomTimeSetting() {
-        String value = Settings.Secure.getStringForUser(getActivity().getContentResolver(),
-                Settings.Secure.DOZE_ALWAYS_ON_AUTO_TIME, UserHandle.USER_CURRENT);
-        if (value == null || value.equals("")) value = "20:00,07:00";
-        return value.split(",", 0);
+    private AutoSchedule getSchedule(int mode) {
+        return AutoSchedule.of(mode, Settings.Secure.getStringForUser(
+                getActivity().getContentResolver(),
+                Settings.Secure.DOZE_ALWAYS_ON_AUTO_TIME, UserHandle.USER_CURRENT));
     }
 
     private void updateTimeEnablement(int mode) {
@@ -127,53 +119,44 @@ public class AODSchedule extends SettingsPreferenceFragment implements
     }
 
     private void updateTimeSummary(int mode) {
-        updateTimeSummary(getCustomTimeSetting(), mode);
+        updateTimeSummary(getSchedule(mode));
     }
 
-    private void updateTimeSummary(String[] times, int mode) {
-        if (mode == MODE_DISABLED) {
+    private void updateTimeSummary(AutoSchedule schedule) {
+        if (schedule.getMode() == MODE_DISABLED) {
             mSincePref.setSummary("-");
             mTillPref.setSummary("-");
             return;
         }
 
-        if (mode == MODE_NIGHT) {
-            mSincePref.setSummary(R.string.always_on_display_schedule_sunset);
-            mTillPref.setSummary(R.string.always_on_display_schedule_sunrise);
-            return;
+        boolean is24Hour = DateFormat.is24HourFormat(getContext());
+        SolarCalculator.SunTimes sun = schedule.startsAtSunset() || schedule.endsAtSunrise()
+                ? SolarCalculator.getToday(getContext()) : null;
+        ZoneId zone = ZoneId.systemDefault();
+        if (schedule.startsAtSunset()) {
+            mSincePref.setSummary(SolarCalculator.formatEvent(getContext(),
+                    R.string.always_on_display_schedule_sunset, sun != null ? sun.getSunset(zone) : null,
+                    is24Hour));
+        } else {
+            mSincePref.setSummary(AutoSchedule.format(schedule.getSince(), is24Hour));
         }
-
-        String outputFormat = DateFormat.is24HourFormat(getContext()) ? "HH:mm" : "hh:mm a";
-        DateTimeFormatter outputFormatter = DateTimeFormatter.ofPattern(outputFormat);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        LocalTime sinceDT = LocalTime.parse(times[0], formatter);
-        LocalTime tillDT = LocalTime.parse(times[1], formatter);
-
-        if (mode == MODE_MIXED_SUNSET) {
-            mSincePref.setSummary(R.string.always_on_display_schedule_sunset);
-            mTillPref.setSummary(tillDT.format(outputFormatter));
-        } else if (mode == MODE_MIXED_SUNRISE) {
-            mTillPref.setSummary(R.string.always_on_display_schedule_sunrise);
-            mSincePref.setSummary(sinceDT.format(outputFormatter));
+        if (schedule.endsAtSunrise()) {
+            mTillPref.setSummary(SolarCalculator.formatEvent(getContext(),
+                    R.string.always_on_display_schedule_sunrise, sun != null ? sun.getSunrise(zone) : null,
+                    is24Hour));
         } else {
-            mSincePref.setSummary(sinceDT.format(outputFormatter));
-            mTillPref.setSummary(tillDT.format(outputFormatter));
+            mTillPref.setSummary(AutoSchedule.format(schedule.getTill(), is24Hour));
         }
     }
 
     private void updateTimeSetting(boolean since, int hour, int minute) {
-        String[] times = getCustomTimeSetting();
-        String nHour = "";
-        String nMinute = "";
-        if (hour < 10) nHour += "0";
-        if (minute < 10) nMinute += "0";
-        nHour += String.valueOf(hour);
-        nMinute += String.valueOf(minute);
-        times[since ? 0 : 1] = nHour + ":" + nMinute;
+        AutoSchedule schedule = getSchedule(Integer.parseInt(mModePref.getValue()));
+        LocalTime time = LocalTime.of(hour, minute);
+        schedule = since ? schedule.withSince(time) : schedule.withTill(time);
         Settings.Secure.putStringForUser(getActivity().getContentResolver(),
                 Settings.Secure.DOZE_ALWAYS_ON_AUTO_TIME,
-                times[0] + "," + times[1], UserHandle.USER_CURRENT);
-        updateTimeSummary(times, Integer.parseInt(mModePref.getValue()));
+                schedule.getTimesValue(), UserHandle.USER_CURRENT);
+        updateTimeSummary(schedule);
     }
 
     @Override
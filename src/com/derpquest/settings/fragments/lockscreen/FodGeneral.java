@@ -22,23 +22,18 @@ import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
-import android.database.ContentObserver;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
-import android.graphics.drawable.Drawable;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.ParcelFileDescriptor;
 import android.os.SystemProperties;
-import android.os.Handler;
 import android.os.UserHandle;
 import android.provider.SearchIndexableResource;
 import android.provider.Settings;
 import android.text.TextUtils;
 import android.util.Log;
+import android.widget.Toast;
 import androidx.preference.*;
 
 import com.android.settings.R;
@@ -58,7 +53,10 @@ import com.derp.support.preference.SystemSettingListPreference;
 
 import com.android.internal.util.custom.FodUtils;
 
-import java.io.FileDescriptor;
+import com.derpquest.settings.utils.DeviceCapabilities;
+import com.derpquest.settings.utils.ImageThumbnailLoader;
+import com.derpquest.settings.utils.SettingsObserverHub;
+
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -75,11 +73,10 @@ public class FodGeneral extends SettingsPreferenceFragment implements
     private static final String FINGERPRINT_CUSTOM_ICON = "custom_fingerprint_icon";
     private static final String FINGERPRINT_ICON_ANIME = "fod_icon_animation";
     private static final int GET_CUSTOM_FP_ICON = 69;
+    private static final String PNG_MIME_TYPE = "image/png";
     private Preference mFilePicker;
     private SystemSettingSwitchPreference mIconAnima;
 
-    private Handler mHandler;
-
     private static final String FOOTER = "custom_fod_icon_footer";
 
     @Override
@@ -104,7 +101,7 @@ public class FodGeneral extends SettingsPreferenceFragment implements
             prefScreen.removePreference(ScreenOffFODPref);
         }
 
-        boolean isFODDevice = getResources().getBoolean(com.android.internal.R.bool.config_needCustomFODView);
+        boolean isFODDevice = DeviceCapabilities.getInstance(mContext).needsCustomFodView();
         if (!isFODDevice){
             removePreference(FINGERPRINT_CUSTOM_ICON);
         } else {
@@ -138,48 +135,34 @@ public class FodGeneral extends SettingsPreferenceFragment implements
             prefScreen.removePreference(AnimaListPref);
         }
 
-        mCustomSettingsObserver.observe();
-        mCustomSettingsObserver.update();
-    }
-
-    private CustomSettingsObserver mCustomSettingsObserver = new CustomSettingsObserver(mHandler);
-    private class CustomSettingsObserver extends ContentObserver {
-
-        CustomSettingsObserver(Handler handler) {
-            super(handler);
-        }
-
-        void observe() {
-            Context mContext = getContext();
-            ContentResolver resolver = mContext.getContentResolver();
-            resolver.registerContentObserver(Settings.System.getUriFor(
-                    Settings.System.FOD_ICON_ANIMATION),
-                    false, this, UserHandle.USER_ALL);
-        }
-
-        @Override
-        public void onChange(boolean selfChange, Uri uri) {
-            if (uri.equals(Settings.System.getUriFor(Settings.System.FOD_ICON_ANIMATION))) {
-                updatePrebuiltIcons();
-            }
-        }
-
-        public void update() {
-            updatePrebuiltIcons();
-        }
+        SettingsObserverHub.getInstance(mContext).observe(this,
+                Settings.System.getUriFor(Settings.System.FOD_ICON_ANIMATION),
+                uri -> updatePrebuiltIcons());
+        updatePrebuiltIcons();
     }
 
     @Override
     public void onActivityResult(int requestCode, int resultCode,
         Intent resultData) {
         if (requestCode == GET_CUSTOM_FP_ICON && resultCode == Activity.RESULT_OK) {
-            Uri uri = null;
-            if (resultData != null) {
-                uri = resultData.getData();
-                mFilePicker.setSummary(uri.toString());
-                setPickerIcon(uri.toString());
-                Settings.System.putString(getContentResolver(), Settings.System.OMNI_CUSTOM_FP_ICON,
-                    uri.toString());
+            if (resultData != null && resultData.getData() != null) {
+                final Uri uri = resultData.getData();
+                // Only keep the pick if it really is a readable PNG
+                ImageThumbnailLoader.getInstance(getContext()).load(uri, getPickerIconSize(),
+                        PNG_MIME_TYPE, (loadedUri, thumbnail) -> {
+                    if (getActivity() == null) {
+                        return;
+                    }
+                    if (thumbnail == null) {
+                        Toast.makeText(getActivity(), R.string.custom_fod_icon_invalid,
+                                Toast.LENGTH_LONG).show();
+                        return;
+                    }
+                    mFilePicker.setSummary(loadedUri.toString());
+                    mFilePicker.setIcon(new BitmapDrawable(getResources(), thumbnail));
+                    Settings.System.putString(getContentResolver(),
+                            Settings.System.OMNI_CUSTOM_FP_ICON, loadedUri.toString());
+                });
             }
         } else if (requestCode == GET_CUSTOM_FP_ICON && resultCode == Activity.RESULT_CANCELED) {
             mFilePicker.setSummary("");
@@ -188,25 +171,23 @@ public class FodGeneral extends SettingsPreferenceFragment implements
         }
     }
 
+    private int getPickerIconSize() {
+        return getResources().getDimensionPixelSize(android.R.dimen.app_icon_size);
+    }
 
     private void setPickerIcon(String uri) {
-        try {
-                ParcelFileDescriptor parcelFileDescriptor =
-                    getContext().getContentResolver().openFileDescriptor(Uri.parse(uri), "r");
-                FileDescriptor fileDescriptor = parcelFileDescriptor.getFileDescriptor();
-                Bitmap image = BitmapFactory.decodeFileDescriptor(fileDescriptor);
-                parcelFileDescriptor.close();
-                Drawable d = new BitmapDrawable(getResources(), image);
-                mFilePicker.setIcon(d);
+        ImageThumbnailLoader.getInstance(getContext()).load(Uri.parse(uri), getPickerIconSize(),
+                null, (loadedUri, thumbnail) -> {
+            if (thumbnail != null && getActivity() != null) {
+                mFilePicker.setIcon(new BitmapDrawable(getResources(), thumbnail));
             }
-            catch (Exception e) {}
+        });
     }
 
     public boolean onPreferenceChange(Preference preference, Object newValue) {
-        ContentResolver resolver = getActivity().getContentResolver();
         if (preference == mIconAnima) {
-            mCustomSettingsObserver.observe();
-            mCustomSettingsObserver.update();
+            // Not persisted yet, the observer catches up once it is
+            mFilePicker.setEnabled(!(Boolean) newValue);
             return true;
         }
         return false;
@@ -28,6 +28,7 @@ import android.os.UserHandle;
 import android.os.ServiceManager;
 import android.provider.SearchIndexableResource;
 import android.provider.Settings;
+import android.text.format.DateFormat;
 
 import androidx.preference.SwitchPreference;
 import androidx.preference.ListPreference;
@@ -49,7 +50,13 @@ import com.derp.support.preference.CustomSeekBarPreference;
 import com.derp.support.preference.SystemSettingListPreference;
 import com.derp.support.preference.SystemSettingSeekBarPreference;
 import com.derp.support.colorpicker.ColorPickerPreference;
+import com.derpquest.settings.utils.AutoSchedule;
+import com.derpquest.settings.utils.DeviceCapabilities;
+import com.derpquest.settings.utils.SettingsSnapshot;
+import com.derpquest.settings.utils.SolarCalculator;
 
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -63,11 +70,11 @@ public class LockscreenGeneral extends SettingsPreferenceFragment implements
     private static final String AMBIENT_ICONS_COLOR = "ambient_icons_color";
     private static final String KEY_LOCKSCREEN_BLUR = "lockscreen_blur";
 
-    static final int MODE_DISABLED = 0;
-    static final int MODE_NIGHT = 1;
-    static final int MODE_TIME = 2;
-    static final int MODE_MIXED_SUNSET = 3;
-    static final int MODE_MIXED_SUNRISE = 4;
+    static final int MODE_DISABLED = AutoSchedule.MODE_DISABLED;
+    static final int MODE_NIGHT = AutoSchedule.MODE_TWILIGHT;
+    static final int MODE_TIME = AutoSchedule.MODE_CUSTOM;
+    static final int MODE_MIXED_SUNSET = AutoSchedule.MODE_MIXED_SUNSET;
+    static final int MODE_MIXED_SUNRISE = AutoSchedule.MODE_MIXED_SUNRISE;
 
     private ListPreference mLockClockFonts;
     private ListPreference mLockDateFonts;
@@ -77,6 +84,9 @@ public class LockscreenGeneral extends SettingsPreferenceFragment implements
 
     Preference mAODPref;
 
+    private SettingsSnapshot mSettings;
+    private SettingsSnapshot mSecureSettings;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -85,8 +95,15 @@ public class LockscreenGeneral extends SettingsPreferenceFragment implements
         WallpaperManager manager = WallpaperManager.getInstance(mContext);
 
         final ContentResolver resolver = getActivity().getContentResolver();
-        int unitMode = Settings.System.getIntForUser(resolver,
-                Settings.System.LOCKSCREEN_BATTERY_INFO_TEMP_UNIT, 0, UserHandle.USER_CURRENT);
+        mSettings = SettingsSnapshot.system(resolver,
+                Settings.System.LOCKSCREEN_BATTERY_INFO_TEMP_UNIT,
+                Settings.System.LOCK_CLOCK_FONT_STYLE,
+                Settings.System.LOCK_DATE_FONTS,
+                Settings.System.AMBIENT_ICONS_COLOR).forUser(UserHandle.USER_CURRENT);
+        mSecureSettings = SettingsSnapshot.secure(resolver,
+                Settings.Secure.DOZE_ALWAYS_ON_AUTO_MODE,
+                Settings.Secure.DOZE_ALWAYS_ON_AUTO_TIME).forUser(UserHandle.USER_CURRENT);
+        int unitMode = mSettings.getInt(Settings.System.LOCKSCREEN_BATTERY_INFO_TEMP_UNIT, 0);
         mBatteryTempUnit = (SystemSettingListPreference) findPreference(
                 "lockscreen_charge_temp_unit");
         mBatteryTempUnit.setValue(String.valueOf(unitMode));
@@ -94,22 +111,21 @@ public class LockscreenGeneral extends SettingsPreferenceFragment implements
         mBatteryTempUnit.setOnPreferenceChangeListener(this);
 
         mLockClockFonts = (ListPreference) findPreference(LOCK_CLOCK_FONT_STYLE);
-        mLockClockFonts.setValue(String.valueOf(Settings.System.getInt(
-                getContentResolver(), Settings.System.LOCK_CLOCK_FONT_STYLE, 0)));
+        mLockClockFonts.setValue(String.valueOf(mSettings.getInt(
+                Settings.System.LOCK_CLOCK_FONT_STYLE, 0)));
         mLockClockFonts.setSummary(mLockClockFonts.getEntry());
         mLockClockFonts.setOnPreferenceChangeListener(this);
 
         // Lockscren Date Fonts
         mLockDateFonts = (ListPreference) findPreference(LOCK_DATE_FONTS);
-        mLockDateFonts.setValue(String.valueOf(Settings.System.getInt(
-                getContentResolver(), Settings.System.LOCK_DATE_FONTS, 1)));
+        mLockDateFonts.setValue(String.valueOf(mSettings.getInt(
+                Settings.System.LOCK_DATE_FONTS, 1)));
         mLockDateFonts.setSummary(mLockDateFonts.getEntry());
         mLockDateFonts.setOnPreferenceChangeListener(this);
         
         // Ambient Icons Color
         mAmbientIconsColor = (ColorPickerPreference) findPreference(AMBIENT_ICONS_COLOR);
-        int intColor = Settings.System.getInt(getContentResolver(),
-                Settings.System.AMBIENT_ICONS_COLOR, Color.WHITE);
+        int intColor = mSettings.getInt(Settings.System.AMBIENT_ICONS_COLOR, Color.WHITE);
         String hexColor = String.format("#%08x", (0xffffff & intColor));
         mAmbientIconsColor.setNewPreviewColor(intColor);
         mAmbientIconsColor.setSummary(hexColor);
@@ -117,7 +133,7 @@ public class LockscreenGeneral extends SettingsPreferenceFragment implements
 
         ParcelFileDescriptor pfd = manager.getWallpaperFile(WallpaperManager.FLAG_LOCK);
         mLockscreenBlur = (SystemSettingSeekBarPreference) findPreference(KEY_LOCKSCREEN_BLUR);
-        if (!com.derpquest.settings.utils.Utils.isBlurSupported() || pfd != null) {
+        if (!DeviceCapabilities.getInstance(getContext()).isBlurSupported() || pfd != null) {
             mLockscreenBlur.setEnabled(false);
             mLockscreenBlur.setSummary(getString(R.string.lockscreen_blur_disabled));
         }
@@ -132,50 +148,68 @@ public class LockscreenGeneral extends SettingsPreferenceFragment implements
         updateAlwaysOnSummary();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mSettings.close();
+        mSecureSettings.close();
+    }
+
     private void updateAlwaysOnSummary() {
         if (mAODPref == null) return;
-        int mode = Settings.Secure.getIntForUser(getActivity().getContentResolver(),
-                Settings.Secure.DOZE_ALWAYS_ON_AUTO_MODE, 0, UserHandle.USER_CURRENT);
+        int mode = mSecureSettings.getInt(Settings.Secure.DOZE_ALWAYS_ON_AUTO_MODE, 0);
+        int summary;
         switch (mode) {
             default:
             case MODE_DISABLED:
                 mAODPref.setSummary(R.string.disabled);
-                break;
+                return;
             case MODE_NIGHT:
-                mAODPref.setSummary(R.string.night_display_auto_mode_twilight);
+                summary = R.string.night_display_auto_mode_twilight;
                 break;
             case MODE_TIME:
                 mAODPref.setSummary(R.string.night_display_auto_mode_custom);
-                break;
+                return;
             case MODE_MIXED_SUNSET:
-                mAODPref.setSummary(R.string.always_on_display_schedule_mixed_sunset);
+                summary = R.string.always_on_display_schedule_mixed_sunset;
                 break;
             case MODE_MIXED_SUNRISE:
-                mAODPref.setSummary(R.string.always_on_display_schedule_mixed_sunrise);
+                summary = R.string.always_on_display_schedule_mixed_sunrise;
                 break;
         }
+        // Twilight based, show today's times when the sun times are known
+        SolarCalculator.SunTimes sun = SolarCalculator.getToday(getContext());
+        AutoSchedule schedule = AutoSchedule.of(mode,
+                mSecureSettings.getString(Settings.Secure.DOZE_ALWAYS_ON_AUTO_TIME));
+        ZoneId zone = ZoneId.systemDefault();
+        LocalTime start = sun != null ? schedule.getStart(sun.getSunset(zone)) : null;
+        LocalTime end = sun != null ? schedule.getEnd(sun.getSunrise(zone)) : null;
+        if (start == null || end == null) {
+            mAODPref.setSummary(summary);
+            return;
+        }
+        boolean is24Hour = DateFormat.is24HourFormat(getContext());
+        mAODPref.setSummary(getString(R.string.schedule_sun_time, getString(summary),
+                getString(R.string.schedule_time_range, AutoSchedule.format(start, is24Hour),
+                        AutoSchedule.format(end, is24Hour))));
     }
 
     public boolean onPreferenceChange(Preference preference, Object newValue) {
-        ContentResolver resolver = getActivity().getContentResolver();
         if (preference == mBatteryTempUnit) {
             int value = Integer.parseInt((String) newValue);
-            Settings.System.putIntForUser(resolver,
-                    Settings.System.LOCKSCREEN_BATTERY_INFO_TEMP_UNIT, value,
-                    UserHandle.USER_CURRENT);
+            mSettings.putInt(Settings.System.LOCKSCREEN_BATTERY_INFO_TEMP_UNIT, value);
             int index = mBatteryTempUnit.findIndexOfValue((String) newValue);
             mBatteryTempUnit.setSummary(
             mBatteryTempUnit.getEntries()[index]);
             return true;
         } else if (preference == mLockClockFonts) {
-            Settings.System.putInt(getContentResolver(), Settings.System.LOCK_CLOCK_FONT_STYLE,
+            mSettings.putInt(Settings.System.LOCK_CLOCK_FONT_STYLE,
                     Integer.valueOf((String) newValue));
             mLockClockFonts.setValue(String.valueOf(newValue));
             mLockClockFonts.setSummary(mLockClockFonts.getEntry());
             return true;
         } else if (preference == mLockDateFonts) {
-            Settings.System.putInt(getContentResolver(), Settings.System.LOCK_DATE_FONTS,
-                    Integer.valueOf((String) newValue));
+            mSettings.putInt(Settings.System.LOCK_DATE_FONTS, Integer.valueOf((String) newValue));
             mLockDateFonts.setValue(String.valueOf(newValue));
             mLockDateFonts.setSummary(mLockDateFonts.getEntry());
             return true;
@@ -184,8 +218,7 @@ public class LockscreenGeneral extends SettingsPreferenceFragment implements
                 .parseInt(String.valueOf(newValue)));
             mAmbientIconsColor.setSummary(hex);
             int intHex = ColorPickerPreference.convertToColorInt(hex);
-            Settings.System.putInt(resolver,
-                    Settings.System.AMBIENT_ICONS_COLOR, intHex);
+            mSettings.putInt(Settings.System.AMBIENT_ICONS_COLOR, intHex);
             return true;
         }
         return false;
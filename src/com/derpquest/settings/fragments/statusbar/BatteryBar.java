@@ -49,6 +49,8 @@ import com.android.settings.Utils;
 import com.derp.support.preference.CustomSeekBarPreference;
 import com.derp.support.colorpicker.ColorPickerPreference;
 
+import com.derpquest.settings.utils.SettingsSnapshot;
+
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 
 import java.util.ArrayList;
@@ -71,6 +73,7 @@ public class BatteryBar extends SettingsPreferenceFragment implements
     private static final String PREF_BATT_ANIMATE_COLOR = "battery_bar_animate_color";
 
     private Context mContext;
+    private SettingsSnapshot mSettings;
 
     private ListPreference mBatteryBar;
     private ListPreference mBatteryBarStyle;
@@ -95,74 +98,76 @@ public class BatteryBar extends SettingsPreferenceFragment implements
         addPreferencesFromResource(R.xml.battery_bar);
 
         mContext = (Context) getActivity();
-        final ContentResolver resolver = getActivity().getContentResolver();
+        mSettings = SettingsSnapshot.system(getActivity().getContentResolver(),
+                Settings.System.BATTERY_BAR_LOCATION,
+                Settings.System.BATTERY_BAR_STYLE,
+                Settings.System.BATTERY_BAR_COLOR,
+                Settings.System.BATTERY_BAR_CHARGING_COLOR,
+                Settings.System.BATTERY_BAR_BATTERY_LOW_COLOR_WARNING,
+                Settings.System.BATTERY_BAR_LOW_COLOR,
+                Settings.System.BATTERY_BAR_HIGH_COLOR,
+                Settings.System.BATTERY_BAR_USE_GRADIENT_COLOR,
+                Settings.System.BATTERY_BAR_ANIMATE,
+                Settings.System.BATTERY_BAR_ANIMATE_COLOR,
+                Settings.System.BATTERY_BAR_THICKNESS);
         PreferenceScreen prefSet = getPreferenceScreen();
         int intColor;
         String hexColor;
 
         mBatteryBar = (ListPreference) findPreference(PREF_BATT_BAR);
         mBatteryBar.setOnPreferenceChangeListener(this);
-        mBatteryBar.setValue((Settings.System.getInt(resolver, Settings.System.BATTERY_BAR_LOCATION, 0)) + "");
+        mBatteryBar.setValue((mSettings.getInt(Settings.System.BATTERY_BAR_LOCATION, 0)) + "");
         mBatteryBar.setSummary(mBatteryBar.getEntry());
 
         mBatteryBarStyle = (ListPreference) findPreference(PREF_BATT_BAR_STYLE);
         mBatteryBarStyle.setOnPreferenceChangeListener(this);
-        mBatteryBarStyle.setValue((Settings.System.getInt(resolver,
-                Settings.System.BATTERY_BAR_STYLE, 0)) + "");
+        mBatteryBarStyle.setValue((mSettings.getInt(Settings.System.BATTERY_BAR_STYLE, 0)) + "");
         mBatteryBarStyle.setSummary(mBatteryBarStyle.getEntry());
 
         mBatteryBarColor = (ColorPickerPreference) prefSet.findPreference(PREF_BATT_BAR_COLOR);
-        intColor = Settings.System.getInt(resolver,
-            Settings.System.BATTERY_BAR_COLOR, Color.WHITE);
+        intColor = mSettings.getInt(Settings.System.BATTERY_BAR_COLOR, Color.WHITE);
         hexColor = String.format("#%08x", (0xffffff & intColor));
         mBatteryBarColor.setNewPreviewColor(intColor);
         mBatteryBarColor.setSummary(hexColor);
         mBatteryBarColor.setOnPreferenceChangeListener(this);
 
         mBatteryBarChargingColor = (ColorPickerPreference) prefSet.findPreference(PREF_BATT_BAR_CHARGING_COLOR);
-        intColor = Settings.System.getInt(resolver,
-            Settings.System.BATTERY_BAR_CHARGING_COLOR, Color.WHITE);
+        intColor = mSettings.getInt(Settings.System.BATTERY_BAR_CHARGING_COLOR, Color.WHITE);
         hexColor = String.format("#%08x", (0xffffff & intColor));
         mBatteryBarChargingColor.setNewPreviewColor(intColor);
         mBatteryBarChargingColor.setSummary(hexColor);
         mBatteryBarChargingColor.setOnPreferenceChangeListener(this);
 
         mBatteryBarBatteryLowColorWarn = (ColorPickerPreference) prefSet.findPreference(PREF_BATT_BAR_LOW_COLOR_WARNING);
-        intColor = Settings.System.getInt(resolver,
-            Settings.System.BATTERY_BAR_BATTERY_LOW_COLOR_WARNING,Color.WHITE);
+        intColor = mSettings.getInt(Settings.System.BATTERY_BAR_BATTERY_LOW_COLOR_WARNING, Color.WHITE);
         hexColor = String.format("#%08x", (0xffffff & intColor));
         mBatteryBarBatteryLowColorWarn.setNewPreviewColor(intColor);
         mBatteryBarBatteryLowColorWarn.setSummary(hexColor);
         mBatteryBarBatteryLowColorWarn.setOnPreferenceChangeListener(this);
 
         mBatteryBarBatteryLowColor = (ColorPickerPreference) prefSet.findPreference(PREF_BATT_BAR_LOW_COLOR);
-        intColor = Settings.System.getInt(resolver,
-            Settings.System.BATTERY_BAR_LOW_COLOR, Color.WHITE);
+        intColor = mSettings.getInt(Settings.System.BATTERY_BAR_LOW_COLOR, Color.WHITE);
         hexColor = String.format("#%08x", (0xffffff & intColor));
         mBatteryBarBatteryLowColor.setNewPreviewColor(intColor);
         mBatteryBarBatteryLowColor.setSummary(hexColor);
         mBatteryBarBatteryLowColor.setOnPreferenceChangeListener(this);
 
         mBatteryBarBatteryHighColor = (ColorPickerPreference) prefSet.findPreference(PREF_BATT_BAR_HIGH_COLOR);
-        intColor = Settings.System.getInt(resolver,
-            Settings.System.BATTERY_BAR_HIGH_COLOR, Color.WHITE);
+        intColor = mSettings.getInt(Settings.System.BATTERY_BAR_HIGH_COLOR, Color.WHITE);
         hexColor = String.format("#%08x", (0xff99CC00 & intColor));
         mBatteryBarBatteryHighColor.setNewPreviewColor(intColor);
         mBatteryBarBatteryHighColor.setSummary(hexColor);
         mBatteryBarBatteryHighColor.setOnPreferenceChangeListener(this);
 
         mBatteryBarUseGradient = (SwitchPreference) findPreference(PREF_BATT_BAR_USE_GRADIENT_COLOR);
-        mBatteryBarUseGradient.setChecked(Settings.System.getInt(resolver,
-                Settings.System.BATTERY_BAR_USE_GRADIENT_COLOR, 0) == 1);
+        mBatteryBarUseGradient.setChecked(mSettings.getInt(Settings.System.BATTERY_BAR_USE_GRADIENT_COLOR, 0) == 1);
 
         mBatteryBarChargingAnimation = (SwitchPreference) findPreference(PREF_BATT_ANIMATE);
-        mBatteryBarChargingAnimation.setChecked(Settings.System.getInt(resolver,
-                Settings.System.BATTERY_BAR_ANIMATE, 0) == 1);
+        mBatteryBarChargingAnimation.setChecked(mSettings.getInt(Settings.System.BATTERY_BAR_ANIMATE, 0) == 1);
 
         mBatteryBarAnimateColor = (ColorPickerPreference) findPreference(PREF_BATT_ANIMATE_COLOR);
         mBatteryBarAnimateColor.setOnPreferenceChangeListener(this);
-        int batteryBarAnimateColor = Settings.System.getInt(resolver,
-                Settings.System.BATTERY_BAR_ANIMATE_COLOR, 0xFFFF2200);
+        int batteryBarAnimateColor = mSettings.getInt(Settings.System.BATTERY_BAR_ANIMATE_COLOR, 0xFFFF2200);
         String batteryBarAnimateColorHex = String.format("#%08x", (0xFFFF2200 & batteryBarAnimateColor));
         if (batteryBarAnimateColorHex.equals("#ffff2200"))
             mBatteryBarAnimateColor.setSummary(R.string.default_string);
@@ -171,76 +176,72 @@ public class BatteryBar extends SettingsPreferenceFragment implements
         mBatteryBarAnimateColor.setNewPreviewColor(batteryBarAnimateColor);
 
         mBatteryBarThickness = (CustomSeekBarPreference) prefSet.findPreference(PREF_BATT_BAR_WIDTH);
-        mBatteryBarThickness.setValue(Settings.System.getInt(resolver,
-                Settings.System.BATTERY_BAR_THICKNESS, 1));
+        mBatteryBarThickness.setValue(mSettings.getInt(Settings.System.BATTERY_BAR_THICKNESS, 1));
         mBatteryBarThickness.setOnPreferenceChangeListener(this);
 
         updateBatteryBarOptions();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mSettings.close();
+    }
+
     @Override
     public boolean onPreferenceChange(Preference preference, Object newValue) {
-        ContentResolver resolver = getActivity().getContentResolver();
         AlertDialog dialog;
         if (preference == mBatteryBarColor) {
             String hex = ColorPickerPreference.convertToARGB(Integer
                 .parseInt(String.valueOf(newValue)));
             preference.setSummary(hex);
             int intHex = ColorPickerPreference.convertToColorInt(hex);
-            Settings.System.putInt(resolver,
-                    Settings.System.BATTERY_BAR_COLOR, intHex);
+            mSettings.putInt(Settings.System.BATTERY_BAR_COLOR, intHex);
             return true;
         } else if (preference == mBatteryBarChargingColor) {
             String hex = ColorPickerPreference.convertToARGB(Integer
                 .parseInt(String.valueOf(newValue)));
             preference.setSummary(hex);
             int intHex = ColorPickerPreference.convertToColorInt(hex);
-            Settings.System.putInt(resolver,
-                    Settings.System.BATTERY_BAR_CHARGING_COLOR, intHex);
+            mSettings.putInt(Settings.System.BATTERY_BAR_CHARGING_COLOR, intHex);
             return true;
         } else if (preference == mBatteryBarBatteryLowColor) {
             String hex = ColorPickerPreference.convertToARGB(Integer
                 .parseInt(String.valueOf(newValue)));
             preference.setSummary(hex);
             int intHex = ColorPickerPreference.convertToColorInt(hex);
-            Settings.System.putInt(resolver,
-                    Settings.System.BATTERY_BAR_LOW_COLOR, intHex);
+            mSettings.putInt(Settings.System.BATTERY_BAR_LOW_COLOR, intHex);
             return true;
         } else if (preference == mBatteryBarBatteryLowColorWarn) {
             String hex = ColorPickerPreference.convertToARGB(Integer
                 .parseInt(String.valueOf(newValue)));
             preference.setSummary(hex);
             int intHex = ColorPickerPreference.convertToColorInt(hex);
-            Settings.System.putInt(resolver,
-                    Settings.System.BATTERY_BAR_BATTERY_LOW_COLOR_WARNING, intHex);
+            mSettings.putInt(Settings.System.BATTERY_BAR_BATTERY_LOW_COLOR_WARNING, intHex);
             return true;
         } else if (preference == mBatteryBarBatteryHighColor) {
             String hex = ColorPickerPreference.convertToARGB(Integer
                 .parseInt(String.valueOf(newValue)));
             preference.setSummary(hex);
             int intHex = ColorPickerPreference.convertToColorInt(hex);
-            Settings.System.putInt(resolver,
-                    Settings.System.BATTERY_BAR_HIGH_COLOR, intHex);
+            mSettings.putInt(Settings.System.BATTERY_BAR_HIGH_COLOR, intHex);
             return true;
         } else if (preference == mBatteryBar) {
             int val = Integer.valueOf((String) newValue);
             int index = mBatteryBar.findIndexOfValue((String) newValue);
-            Settings.System.putInt(resolver,
-                    Settings.System.BATTERY_BAR_LOCATION, val);
+            mSettings.putInt(Settings.System.BATTERY_BAR_LOCATION, val);
             mBatteryBar.setSummary(mBatteryBar.getEntries()[index]);
             updateBatteryBarOptions();
             return true;
         } else if (preference == mBatteryBarStyle) {
             int val = Integer.parseInt((String) newValue);
             int index = mBatteryBarStyle.findIndexOfValue((String) newValue);
-            Settings.System.putInt(resolver,
-                    Settings.System.BATTERY_BAR_STYLE, val);
+            mSettings.putInt(Settings.System.BATTERY_BAR_STYLE, val);
             mBatteryBarStyle.setSummary(mBatteryBarStyle.getEntries()[index]);
             return true;
         } else if (preference == mBatteryBarThickness) {
             int val =  (Integer) newValue;
-            Settings.System.putInt(resolver,
-                Settings.System.BATTERY_BAR_THICKNESS, val);
+            mSettings.putInt(Settings.System.BATTERY_BAR_THICKNESS, val);
             return true;
         } else if (preference == mBatteryBarAnimateColor) {
             String hex = ColorPickerPreference.convertToARGB(
@@ -250,33 +251,29 @@ public class BatteryBar extends SettingsPreferenceFragment implements
             else
                 mBatteryBarAnimateColor.setSummary(hex);
             int intHex = ColorPickerPreference.convertToColorInt(hex);
-            Settings.System.putInt(resolver,
-                Settings.System.BATTERY_BAR_ANIMATE_COLOR, intHex);
+            mSettings.putInt(Settings.System.BATTERY_BAR_ANIMATE_COLOR, intHex);
             return true;
         }
         return false;
     }
 
     public boolean onPreferenceTreeClick(Preference preference) {
-        ContentResolver resolver = getActivity().getContentResolver();
         boolean value;
 
         if (preference == mBatteryBarChargingAnimation) {
             value = mBatteryBarChargingAnimation.isChecked();
-            Settings.System.putInt(resolver,
-                    Settings.System.BATTERY_BAR_ANIMATE, value ? 1 : 0);
+            mSettings.putInt(Settings.System.BATTERY_BAR_ANIMATE, value ? 1 : 0);
             return true;
          } else if (preference == mBatteryBarUseGradient) {
             value = mBatteryBarUseGradient.isChecked();
-            Settings.System.putInt(getContentResolver(), Settings.System.BATTERY_BAR_USE_GRADIENT_COLOR, value ? 1 : 0);
+            mSettings.putInt(Settings.System.BATTERY_BAR_USE_GRADIENT_COLOR, value ? 1 : 0);
             return true;
         }
         return false;
     }
 
     private void updateBatteryBarOptions() {
-        if (Settings.System.getInt(getActivity().getContentResolver(),
-                Settings.System.BATTERY_BAR_LOCATION, 0) == 0) {
+        if (mSettings.getInt(Settings.System.BATTERY_BAR_LOCATION, 0) == 0) {
             mBatteryBarStyle.setEnabled(false);
             mBatteryBarThickness.setEnabled(false);
             mBatteryBarChargingAnimation.setEnabled(false);
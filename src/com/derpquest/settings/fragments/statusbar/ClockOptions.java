@@ -46,6 +46,8 @@ import com.derp.support.preference.CustomSeekBarPreference;
 import com.derp.support.preference.SystemSettingListPreference;
 import com.derp.support.preference.SystemSettingIntListPreference;
 
+import com.derpquest.settings.utils.SettingsSnapshot;
+
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -74,23 +76,27 @@ public class ClockOptions extends SettingsPreferenceFragment implements
     private SystemSettingListPreference mClockDatePosition;
     private SystemSettingListPreference mClockDateStyle;
     private ListPreference mClockDateFormat;
+    private SettingsSnapshot mSettings;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         addPreferencesFromResource(R.xml.clock_options);
 
-        ContentResolver resolver = getActivity().getContentResolver();
+        mSettings = SettingsSnapshot.system(getActivity().getContentResolver(),
+                Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_HDURATION,
+                Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_SDURATION,
+                Settings.System.STATUS_BAR_CLOCK_DATE_DISPLAY,
+                Settings.System.STATUS_BAR_CLOCK_DATE_STYLE,
+                Settings.System.STATUS_BAR_CLOCK_DATE_FORMAT).forUser(UserHandle.USER_CURRENT);
 
         mHideDuration = (CustomSeekBarPreference) findPreference(CLOCK_DATE_AUTO_HIDE_HDUR);
-        int hideVal = Settings.System.getIntForUser(resolver,
-                Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_HDURATION, 60, UserHandle.USER_CURRENT);
+        int hideVal = mSettings.getInt(Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_HDURATION, 60);
         mHideDuration.setValue(hideVal);
         mHideDuration.setOnPreferenceChangeListener(this);
 
         mShowDuration = (CustomSeekBarPreference) findPreference(CLOCK_DATE_AUTO_HIDE_SDUR);
-        int showVal = Settings.System.getIntForUser(resolver,
-                Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_SDURATION, 5, UserHandle.USER_CURRENT);
+        int showVal = mSettings.getInt(Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_SDURATION, 5);
         mShowDuration.setValue(showVal);
         mShowDuration.setOnPreferenceChangeListener(this);
 
@@ -102,8 +108,7 @@ public class ClockOptions extends SettingsPreferenceFragment implements
             mStatusBarAmPm.setSummary(R.string.status_bar_am_pm_info);
         }
 
-        int dateDisplay = Settings.System.getIntForUser(resolver,
-                Settings.System.STATUS_BAR_CLOCK_DATE_DISPLAY, 0, UserHandle.USER_CURRENT);
+        int dateDisplay = mSettings.getInt(Settings.System.STATUS_BAR_CLOCK_DATE_DISPLAY, 0);
 
         mClockDateDisplay = (SystemSettingListPreference) findPreference(CLOCK_DATE_DISPLAY);
         mClockDateDisplay.setOnPreferenceChangeListener(this);
@@ -125,19 +130,22 @@ public class ClockOptions extends SettingsPreferenceFragment implements
         mClockDateFormat.setOnPreferenceChangeListener(this);
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mSettings.close();
+    }
+
     @Override
     public boolean onPreferenceChange(Preference preference, Object newValue) {
       AlertDialog dialog;
-      ContentResolver resolver = getActivity().getContentResolver();
       if (preference == mHideDuration) {
             int value = (Integer) newValue;
-            Settings.System.putIntForUser(resolver,
-                    Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_HDURATION, value, UserHandle.USER_CURRENT);
+            mSettings.putInt(Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_HDURATION, value);
             return true;
       } else if (preference == mShowDuration) {
             int value = (Integer) newValue;
-            Settings.System.putIntForUser(resolver,
-                    Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_SDURATION, value, UserHandle.USER_CURRENT);
+            mSettings.putInt(Settings.System.STATUS_BAR_CLOCK_AUTO_HIDE_SDURATION, value);
             return true;
       } else if (preference == mClockDateDisplay) {
           int val = Integer.parseInt((String) newValue);
@@ -166,8 +174,7 @@ public class ClockOptions extends SettingsPreferenceFragment implements
               alert.setMessage(R.string.status_bar_date_string_edittext_summary);
 
               final EditText input = new EditText(getActivity());
-              String oldText = Settings.System.getString(
-                  resolver,
+              String oldText = mSettings.getString(
                   Settings.System.STATUS_BAR_CLOCK_DATE_FORMAT);
               if (oldText != null) {
                   input.setText(oldText);
@@ -180,7 +187,7 @@ public class ClockOptions extends SettingsPreferenceFragment implements
                       if (value.equals("")) {
                           return;
                       }
-                      Settings.System.putString(resolver,
+                      mSettings.putString(
                           Settings.System.STATUS_BAR_CLOCK_DATE_FORMAT, value);
 
                       return;
@@ -197,7 +204,7 @@ public class ClockOptions extends SettingsPreferenceFragment implements
               dialog.show();
           } else {
               if ((String) newValue != null) {
-                  Settings.System.putString(resolver,
+                  mSettings.putString(
                       Settings.System.STATUS_BAR_CLOCK_DATE_FORMAT, (String) newValue);
               }
           }
@@ -214,8 +221,7 @@ public class ClockOptions extends SettingsPreferenceFragment implements
         Date now = new Date();
 
         int lastEntry = dateEntries.length - 1;
-        int dateFormat = Settings.System.getIntForUser(getActivity()
-                .getContentResolver(), Settings.System.STATUS_BAR_CLOCK_DATE_STYLE, 0, UserHandle.USER_CURRENT);
+        int dateFormat = mSettings.getInt(Settings.System.STATUS_BAR_CLOCK_DATE_STYLE, 0);
         for (int i = 0; i < dateEntries.length; i++) {
             if (i == lastEntry) {
                 parsedDateEntries[i] = dateEntries[i];
@@ -40,13 +40,14 @@ import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
 
 import com.android.internal.logging.nano.MetricsProto;
-import com.android.internal.util.derp.derpUtils;
 
 import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
 
 import com.derp.support.preference.SystemSettingListPreference;
 
+import com.derpquest.settings.utils.DeviceCapabilities;
+
 public class CustomCarrierLabel extends SettingsPreferenceFragment implements
         Preference.OnPreferenceChangeListener, CompoundButton.OnCheckedChangeListener {
 
@@ -85,8 +86,9 @@ public class CustomCarrierLabel extends SettingsPreferenceFragment implements
         };
         CharSequence[] NonNotchValues = {"0", "1" , "2"};
         CharSequence[] NotchValues = {"0"};
-        mShowCarrierLabel.setEntries(derpUtils.hasNotch(getActivity()) ? NotchEntries : NonNotchEntries);
-        mShowCarrierLabel.setEntryValues(derpUtils.hasNotch(getActivity()) ? NotchValues : NonNotchValues);
+        boolean hasNotch = DeviceCapabilities.getInstance(getActivity()).hasNotch();
+        mShowCarrierLabel.setEntries(hasNotch ? NotchEntries : NonNotchEntries);
+        mShowCarrierLabel.setEntryValues(hasNotch ? NotchValues : NonNotchValues);
         mShowCarrierLabel.setValue(String.valueOf(showCarrierLabel));
         mShowCarrierLabel.setSummary(mShowCarrierLabel.getEntry());
         mShowCarrierLabel.setOnPreferenceChangeListener(this);
@@ -41,6 +41,8 @@ import com.android.settings.SettingsPreferenceFragment;
 import com.derp.support.preference.CustomSeekBarPreference;
 import com.derp.support.preference.SystemSettingListPreference;
 
+import com.derpquest.settings.utils.SettingsTransaction;
+
 public class Ticker extends SettingsPreferenceFragment {
 
     private static final String STATUSBAR_TICKER_FOOTER = "statusbar_ticker_footer";
@@ -57,12 +59,12 @@ public class Ticker extends SettingsPreferenceFragment {
     public static void reset(Context mContext) {
         ContentResolver resolver = mContext.getContentResolver();
 
-        Settings.System.putIntForUser(resolver,
-                Settings.System.STATUS_BAR_SHOW_TICKER, 0, UserHandle.USER_CURRENT);
-        Settings.System.putIntForUser(resolver,
-                Settings.System.STATUS_BAR_TICKER_ANIMATION_MODE, 1, UserHandle.USER_CURRENT);
-        Settings.System.putIntForUser(resolver,
-                Settings.System.STATUS_BAR_TICKER_TICK_DURATION, 3000, UserHandle.USER_CURRENT);
+        SettingsTransaction.system(resolver)
+                .forUser(UserHandle.USER_CURRENT)
+                .putInt(Settings.System.STATUS_BAR_SHOW_TICKER, 0)
+                .putInt(Settings.System.STATUS_BAR_TICKER_ANIMATION_MODE, 1)
+                .putInt(Settings.System.STATUS_BAR_TICKER_TICK_DURATION, 3000)
+                .commit();
     }
 
     @Override
@@ -46,8 +46,8 @@ import com.android.settings.SettingsPreferenceFragment;
 
 import com.derp.support.preference.SystemSettingMasterSwitchPreference;
 
-import java.time.format.DateTimeFormatter;
-import java.time.LocalTime;
+import com.derpquest.settings.utils.AutoSchedule;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -75,15 +75,12 @@ public class BatteryTweaks extends SettingsPreferenceFragment
                 Settings.Secure.SLEEP_MODE_ENABLED, 0, UserHandle.USER_CURRENT) == 1;
         int mode = Settings.Secure.getIntForUser(getActivity().getContentResolver(),
                 Settings.Secure.SLEEP_MODE_AUTO_MODE, 0, UserHandle.USER_CURRENT);
-        String timeValue = Settings.Secure.getStringForUser(getActivity().getContentResolver(),
-                Settings.Secure.SLEEP_MODE_AUTO_TIME, UserHandle.USER_CURRENT);
-        if (timeValue == null || timeValue.equals("")) timeValue = "20:00,07:00";
-        String[] time = timeValue.split(",", 0);
-        String outputFormat = DateFormat.is24HourFormat(getContext()) ? "HH:mm" : "h:mm a";
-        DateTimeFormatter outputFormatter = DateTimeFormatter.ofPattern(outputFormat);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        LocalTime sinceValue = LocalTime.parse(time[0], formatter);
-        LocalTime tillValue = LocalTime.parse(time[1], formatter);
+        AutoSchedule schedule = AutoSchedule.of(mode, Settings.Secure.getStringForUser(
+                getActivity().getContentResolver(),
+                Settings.Secure.SLEEP_MODE_AUTO_TIME, UserHandle.USER_CURRENT));
+        boolean is24Hour = DateFormat.is24HourFormat(getContext());
+        String sinceValue = AutoSchedule.format(schedule.getSince(), is24Hour);
+        String tillValue = AutoSchedule.format(schedule.getTill(), is24Hour);
         String detail;
         switch (mode) {
             default:
@@ -99,14 +96,14 @@ public class BatteryTweaks extends SettingsPreferenceFragment
                 break;
             case 2:
                 if (enabled) {
-                    detail = getActivity().getString(R.string.night_display_summary_on_auto_mode_custom, tillValue.format(outputFormatter));
+                    detail = getActivity().getString(R.string.night_display_summary_on_auto_mode_custom, tillValue);
                 } else {
-                    detail = getActivity().getString(R.string.night_display_summary_off_auto_mode_custom, sinceValue.format(outputFormatter));
+                    detail = getActivity().getString(R.string.night_display_summary_off_auto_mode_custom, sinceValue);
                 }
                 break;
             case 3:
                 if (enabled) {
-                    detail = getActivity().getString(R.string.night_display_summary_on_auto_mode_custom, tillValue.format(outputFormatter));
+                    detail = getActivity().getString(R.string.night_display_summary_on_auto_mode_custom, tillValue);
                 } else {
                     detail = getActivity().getString(R.string.night_display_summary_off_auto_mode_twilight);
                 }
@@ -115,7 +112,7 @@ public class BatteryTweaks extends SettingsPreferenceFragment
                 if (enabled) {
                     detail = getActivity().getString(R.string.night_display_summary_on_auto_mode_twilight);
                 } else {
-                    detail = getActivity().getString(R.string.night_display_summary_off_auto_mode_custom, sinceValue.format(outputFormatter));
+                    detail = getActivity().getString(R.string.night_display_summary_off_auto_mode_custom, sinceValue);
                 }
                 break;
         }
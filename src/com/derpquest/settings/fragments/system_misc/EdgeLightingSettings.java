@@ -36,6 +36,10 @@ import com.android.settingslib.search.Indexable;
 import com.android.settingslib.search.SearchIndexable;
 
 import com.derpquest.settings.fragments.system_misc.EdgeLightingEnabler;
+import com.derpquest.settings.utils.DebouncedSettingsWriter;
+import com.derpquest.settings.utils.PreferenceRules;
+import com.derpquest.settings.utils.SettingsSnapshot;
+import com.derpquest.settings.utils.SettingsTransaction;
 import com.derp.support.colorpicker.ColorPickerPreference;
 import com.derp.support.preference.SecureSettingListPreference;
 import com.derp.support.preference.SystemSettingListPreference;
@@ -64,6 +68,9 @@ public class EdgeLightingSettings extends SettingsPreferenceFragment implements
     private SystemSettingSwitchPreference mAmbientNotificationForAll;
 
     private EdgeLightingEnabler mEdgeLightingEnabler;
+    private DebouncedSettingsWriter mSeekBarWriter;
+    private SettingsSnapshot mSettings;
+    private PreferenceRules mRules;
 
     private boolean enabled;
 
@@ -73,6 +80,15 @@ public class EdgeLightingSettings extends SettingsPreferenceFragment implements
 
         addPreferencesFromResource(R.xml.edge_notifications);
 
+        mSeekBarWriter = DebouncedSettingsWriter.system(getContentResolver());
+        mSettings = SettingsSnapshot.system(getContentResolver(),
+                Settings.System.NOTIFICATION_PULSE,
+                Settings.System.NOTIFICATION_PULSE_REPEATS,
+                Settings.System.NOTIFICATION_PULSE_DURATION,
+                Settings.System.NOTIFICATION_PULSE_COLOR_AUTOMATIC,
+                Settings.System.NOTIFICATION_PULSE_ACCENT,
+                Settings.System.NOTIFICATION_PULSE_COLOR).forUser(UserHandle.USER_CURRENT);
+
         mAmbientNotificationLightEnabled = (SystemSettingSwitchPreference) findPreference("ambient_notification_light_enabled");
         mAmbientNotificationLightHideAod = (SystemSettingSwitchPreference) findPreference("ambient_notification_light_hide_aod");
         mAmbientNotificationLightTimeout = (SystemSettingListPreference) findPreference("ambient_notification_light_timeout");
@@ -84,20 +100,18 @@ public class EdgeLightingSettings extends SettingsPreferenceFragment implements
         mEdgeLightRepeatDirection = (SystemSettingListPreference) findPreference("ambient_light_repeat_direction");
         mAmbientNotificationForAll = (SystemSettingSwitchPreference) findPreference("ambient_light_pulse_for_all");
 
-        int repeats = Settings.System.getInt(getContentResolver(),
-                Settings.System.NOTIFICATION_PULSE_REPEATS, 0);
+        int repeats = mSettings.getInt(Settings.System.NOTIFICATION_PULSE_REPEATS, 0);
         mEdgeLightRepeatCountPreference.setValue(repeats);
         mEdgeLightRepeatCountPreference.setOnPreferenceChangeListener(this);
 
-        int duration = Settings.System.getInt(getContentResolver(),
-                Settings.System.NOTIFICATION_PULSE_DURATION, 2);
+        int duration = mSettings.getInt(Settings.System.NOTIFICATION_PULSE_DURATION, 2);
         mEdgeLightDurationPreference.setValue(duration);
         mEdgeLightDurationPreference.setOnPreferenceChangeListener(this);
 
         int value;
-        boolean colorModeAutomatic = Settings.System.getInt(getContentResolver(),
+        boolean colorModeAutomatic = mSettings.getInt(
                 Settings.System.NOTIFICATION_PULSE_COLOR_AUTOMATIC, 0) != 0;
-        boolean colorModeAccent = Settings.System.getInt(getContentResolver(),
+        boolean colorModeAccent = mSettings.getInt(
                 Settings.System.NOTIFICATION_PULSE_ACCENT, 0) != 0;
         if (colorModeAutomatic) {
             value = 0;
@@ -111,8 +125,7 @@ public class EdgeLightingSettings extends SettingsPreferenceFragment implements
         mColorMode.setSummary(mColorMode.getEntry());
         mColorMode.setOnPreferenceChangeListener(this);
 
-        int edgeLightColor = Settings.System.getInt(getContentResolver(),
-                Settings.System.NOTIFICATION_PULSE_COLOR, 0xFF3980FF);
+        int edgeLightColor = mSettings.getInt(Settings.System.NOTIFICATION_PULSE_COLOR, 0xFF3980FF);
         mEdgeLightColorPreference.setNewPreviewColor(edgeLightColor);
         mEdgeLightColorPreference.setAlphaSliderEnabled(enabled ? true : false);
         String edgeLightColorHex = String.format("#%08x", (0xFF3980FF & edgeLightColor));
@@ -122,7 +135,26 @@ public class EdgeLightingSettings extends SettingsPreferenceFragment implements
             mEdgeLightColorPreference.setSummary(edgeLightColorHex);
         }
         mEdgeLightColorPreference.setOnPreferenceChangeListener(this);
-        refreshPreferenceStates();
+        bindRules();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        // AOD may have been toggled on another screen meanwhile
+        mRules.set(Settings.Secure.DOZE_ALWAYS_ON, isAodEnabled());
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mSeekBarWriter.flush();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mSettings.close();
     }
 
     @Override
@@ -156,40 +188,25 @@ public class EdgeLightingSettings extends SettingsPreferenceFragment implements
                 preference.setSummary(hex);
             }
             int intHex = ColorPickerPreference.convertToColorInt(hex);
-            Settings.System.putInt(getContentResolver(),
-                    Settings.System.NOTIFICATION_PULSE_COLOR, intHex);
+            mSettings.putInt(Settings.System.NOTIFICATION_PULSE_COLOR, intHex);
             return true;
         } else if (preference == mEdgeLightRepeatCountPreference) {
             int value = (Integer) newValue;
-            Settings.System.putInt(getContentResolver(),
-                    Settings.System.NOTIFICATION_PULSE_REPEATS, value);
+            mSeekBarWriter.putInt(Settings.System.NOTIFICATION_PULSE_REPEATS, value);
             return true;
         } else if (preference == mEdgeLightDurationPreference) {
             int value = (Integer) newValue;
-                Settings.System.putInt(getContentResolver(),
-                    Settings.System.NOTIFICATION_PULSE_DURATION, value);
+            mSeekBarWriter.putInt(Settings.System.NOTIFICATION_PULSE_DURATION, value);
             return true;
         } else if (preference == mColorMode) {
             int value = Integer.valueOf((String) newValue);
             int index = mColorMode.findIndexOfValue((String) newValue);
             mColorMode.setSummary(mColorMode.getEntries()[index]);
-            if (value == 0) {
-                Settings.System.putInt(getContentResolver(),
-                        Settings.System.NOTIFICATION_PULSE_COLOR_AUTOMATIC, 1);
-                Settings.System.putInt(getContentResolver(),
-                        Settings.System.NOTIFICATION_PULSE_ACCENT, 0);
-            } else if (value == 1) {
-                Settings.System.putInt(getContentResolver(),
-                        Settings.System.NOTIFICATION_PULSE_COLOR_AUTOMATIC, 0);
-                Settings.System.putInt(getContentResolver(),
-                        Settings.System.NOTIFICATION_PULSE_ACCENT, 1);
-            } else {
-                Settings.System.putInt(getContentResolver(),
-                        Settings.System.NOTIFICATION_PULSE_COLOR_AUTOMATIC, 0);
-                Settings.System.putInt(getContentResolver(),
-                        Settings.System.NOTIFICATION_PULSE_ACCENT, 0);
-            }
-            refreshPreferenceStates();
+            // Both keys change together, write them in one go
+            SettingsTransaction.system(getContentResolver())
+                    .putInt(Settings.System.NOTIFICATION_PULSE_COLOR_AUTOMATIC, value == 0 ? 1 : 0)
+                    .putInt(Settings.System.NOTIFICATION_PULSE_ACCENT, value == 1 ? 1 : 0)
+                    .commit();
             return true;
         }
         return false;
@@ -197,30 +214,36 @@ public class EdgeLightingSettings extends SettingsPreferenceFragment implements
 
     @Override
     public void onChanged(boolean enabled) {
-        refreshPreferenceStates();
+        // The snapshot only hears about the write asynchronously
+        this.enabled = enabled;
+        mRules.set(Settings.System.NOTIFICATION_PULSE, enabled);
     }
 
-    private void refreshPreferenceStates() {
-        enabled = Settings.System.getIntForUser(getContext().getContentResolver(),
-                Settings.System.NOTIFICATION_PULSE, 0, UserHandle.USER_CURRENT) == 1;
-        boolean aodEnabled = Settings.Secure.getIntForUser(getContext().getContentResolver(),
+    private boolean isAodEnabled() {
+        return Settings.Secure.getIntForUser(getContext().getContentResolver(),
                 Settings.Secure.DOZE_ALWAYS_ON, 0, UserHandle.USER_CURRENT) == 1;
-        mEdgeLightColorPreference.setEnabled(enabled ? true : false);
-        mEdgeLightDurationPreference.setEnabled(enabled ? true : false);
-        mEdgeLightRepeatCountPreference.setEnabled(enabled ? true : false);
-        mEdgeLightRepeatDirection.setEnabled(enabled ? true : false);
-        mAmbientNotificationLightEnabled.setEnabled(enabled ? true : false);
-        mColorMode.setEnabled(enabled ? true : false);
-        mAmbientNotificationLightHideAod.setEnabled(enabled ? true : false);
-        mAmbientNotificationLightTimeout.setEnabled(enabled ? true : false);
-        mAmbientLightLayout.setEnabled(enabled ? true : false);
-        mAmbientNotificationForAll.setEnabled(enabled ? true : false);
-        mAmbientNotificationLightEnabled.setEnabled(enabled && aodEnabled ? true : false);
-        mAmbientNotificationLightHideAod.setEnabled(enabled && aodEnabled ? true : false);
-        if (!aodEnabled) {
-            mAmbientNotificationLightHideAod.setSummary(R.string.aod_disabled);
-            mAmbientNotificationLightEnabled.setSummary(R.string.aod_disabled);
-        }
+    }
+
+    private void bindRules() {
+        final PreferenceRules.Expr pulse = PreferenceRules.isOn(Settings.System.NOTIFICATION_PULSE);
+        final PreferenceRules.Expr aod = PreferenceRules.isOn(Settings.Secure.DOZE_ALWAYS_ON);
+        enabled = mSettings.getInt(Settings.System.NOTIFICATION_PULSE, 0) == 1;
+        mRules = new PreferenceRules()
+                .define(Settings.System.NOTIFICATION_PULSE, enabled ? 1 : 0)
+                .define(Settings.Secure.DOZE_ALWAYS_ON, isAodEnabled() ? 1 : 0)
+                .enableWhen(pulse, mEdgeLightColorPreference, mEdgeLightDurationPreference,
+                        mEdgeLightRepeatCountPreference, mEdgeLightRepeatDirection, mColorMode,
+                        mAmbientNotificationLightTimeout, mAmbientLightLayout,
+                        mAmbientNotificationForAll)
+                .enableWhen(PreferenceRules.allOf(pulse, aod),
+                        mAmbientNotificationLightEnabled, mAmbientNotificationLightHideAod)
+                .when(aod, aodEnabled -> {
+                    if (!aodEnabled) {
+                        mAmbientNotificationLightHideAod.setSummary(R.string.aod_disabled);
+                        mAmbientNotificationLightEnabled.setSummary(R.string.aod_disabled);
+                    }
+                });
+        mRules.bind();
     }
 
     public static final SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
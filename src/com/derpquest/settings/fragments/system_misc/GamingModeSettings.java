@@ -35,6 +35,7 @@ import com.android.settings.SettingsPreferenceFragment;
 import java.util.ArrayList;
 
 import com.derpquest.settings.preferences.PackageListPreference;
+import com.derpquest.settings.utils.PreferenceRules;
 import com.derp.support.preference.SystemSettingSeekBarPreference;
 
 public class GamingModeSettings extends SettingsPreferenceFragment implements OnPreferenceChangeListener {
@@ -44,6 +45,7 @@ public class GamingModeSettings extends SettingsPreferenceFragment implements On
     private Preference mDanmaku;
     private Preference mQapps;
     private SystemSettingSeekBarPreference mOpacity;
+    private PreferenceRules mRules;
 
     private boolean performance_supported;
 
@@ -75,9 +77,11 @@ public class GamingModeSettings extends SettingsPreferenceFragment implements On
         mUseMenuSwitch.setChecked(menuEnabled);
         mUseMenuSwitch.setOnPreferenceChangeListener(this);
 
-        mDanmaku.setEnabled(menuEnabled);
-        mQapps.setEnabled(menuEnabled);
-        mOpacity.setEnabled(menuEnabled);
+        mRules = new PreferenceRules()
+                .define(Settings.System.GAMING_MODE_USE_OVERLAY_MENU, menuEnabled ? 1 : 0)
+                .enableWhen(PreferenceRules.isOn(Settings.System.GAMING_MODE_USE_OVERLAY_MENU),
+                        mDanmaku, mQapps, mOpacity);
+        mRules.bind();
 
         mGamingPrefList = (PackageListPreference) findPreference("gaming_mode_app_list");
         mGamingPrefList.setRemovedListKey(Settings.System.GAMING_MODE_REMOVED_APP_LIST);
@@ -90,9 +94,7 @@ public class GamingModeSettings extends SettingsPreferenceFragment implements On
             boolean value = (Boolean) newValue;
             Settings.System.putInt(resolver, Settings.System.GAMING_MODE_USE_OVERLAY_MENU,
                     value ? 1 : 0);
-            mDanmaku.setEnabled(value);
-            mQapps.setEnabled(value);
-            mOpacity.setEnabled(value);
+            mRules.set(Settings.System.GAMING_MODE_USE_OVERLAY_MENU, value);
             return true;
         }
         return false;
@@ -54,10 +54,14 @@ import com.android.settingslib.search.SearchIndexable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import com.android.internal.util.derp.ThemesUtils;
 import com.android.internal.util.derp.derpUtils;
 
+import com.derpquest.settings.utils.OverlayReconciler;
+import com.derpquest.settings.utils.OverlayStateIndex;
+
 @SearchIndexable
 public class Gvisual extends SettingsPreferenceFragment implements
          OnPreferenceChangeListener {
@@ -66,8 +70,22 @@ public class Gvisual extends SettingsPreferenceFragment implements
     private static final String PREF_NB_COLOR = "navbar_color";
     private static final String PREF_HD_SIZE = "header_size";
 
-    private IOverlayManager mOverlayManager;
+    // Navbar color and header size overlays, in list preference value order
+    private static final String[] NAVBAR_COLORS = {
+        ThemesUtils.NAVBAR_COLOR_ORCD,
+        ThemesUtils.NAVBAR_COLOR_OPRD,
+        ThemesUtils.NAVBAR_COLOR_PURP,
+        ThemesUtils.NAVBAR_COLOR_BLUE,
+        ThemesUtils.NAVBAR_COLOR_ROSE,
+    };
+    private static final String[] HEADER_SIZES = {
+        ThemesUtils.HEADER_LARGE,
+        ThemesUtils.HEADER_XLARGE,
+    };
+
     private IOverlayManager mOverlayService;
+    private OverlayReconciler mOverlayReconciler;
+    private OverlayStateIndex mOverlayIndex;
     private ListPreference mSbHeight;
     private ListPreference mnbSwitch;
     private ListPreference mhdSize;
@@ -82,12 +100,14 @@ public class Gvisual extends SettingsPreferenceFragment implements
 
         mOverlayService = IOverlayManager.Stub
                 .asInterface(ServiceManager.getService(Context.OVERLAY_SERVICE));
+        mOverlayReconciler = new OverlayReconciler(getContext(), mOverlayService, USER_SYSTEM);
+        mOverlayIndex = mOverlayReconciler.getIndex();
 
         setupNavbarSwitchPref();
         setupHeaderSwitchPref();
 
         mSbHeight = (ListPreference) findPreference(PREF_SB_HEIGHT);
-        int sbHeightValue = getOverlayPosition(ThemesUtils.STATUSBAR_HEIGHT);
+        int sbHeightValue = mOverlayIndex.getEnabledIndex(ThemesUtils.STATUSBAR_HEIGHT);
         if (sbHeightValue != -1) {
             mSbHeight.setValue(String.valueOf(sbHeightValue + 2));
         } else {
@@ -97,165 +117,44 @@ public class Gvisual extends SettingsPreferenceFragment implements
         mSbHeight.setOnPreferenceChangeListener(this);
     }
 
-    public void handleOverlays(String packagename, Boolean state, IOverlayManager mOverlayManager) {
-        try {
-            mOverlayService.setEnabled(packagename, state, USER_SYSTEM);
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
-    }
-
     @Override
     public boolean onPreferenceChange(Preference preference, Object objValue) {
-        ContentResolver resolver = getActivity().getContentResolver();
-        if (preference == mnbSwitch){
-        String nbSwitch = (String) objValue;
-        final Context context = getContext();
-        switch (nbSwitch) {
-            case "1":
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ORCD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_OPRD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_PURP, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_BLUE, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ROSE, false, mOverlayManager);
-            break;
-            case "2":
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ORCD, true, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_OPRD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_PURP, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_BLUE, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ROSE, false, mOverlayManager);
-            break;
-            case "3":
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ORCD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_OPRD, true, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_PURP, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_BLUE, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ROSE, false, mOverlayManager);
-            break;
-            case "4":
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ORCD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_OPRD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_PURP, true, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_BLUE, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ROSE, false, mOverlayManager);
-            break;
-            case "5":
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ORCD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_OPRD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_PURP, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_BLUE, true, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ROSE, false, mOverlayManager);
-            break;
-            case "6":
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ORCD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_OPRD, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_PURP, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_BLUE, false, mOverlayManager);
-            handleOverlays(ThemesUtils.NAVBAR_COLOR_ROSE, true, mOverlayManager);
-            break;
-        }
-        try {
-             mOverlayService.reloadAndroidAssets(UserHandle.USER_CURRENT);
-             mOverlayService.reloadAssets("com.android.settings", UserHandle.USER_CURRENT);
-             mOverlayService.reloadAssets("com.android.systemui", UserHandle.USER_CURRENT);
-         } catch (RemoteException ignored) {
-         }
-        return true;
-        } else if (preference == mhdSize){
-        String hdsize = (String) objValue;
-        final Context context = getContext();
-        switch (hdsize) {
-            case "1":
-            handleOverlays(ThemesUtils.HEADER_LARGE, false, mOverlayManager);
-            handleOverlays(ThemesUtils.HEADER_XLARGE, false, mOverlayManager);
-            break;
-            case "2":
-            handleOverlays(ThemesUtils.HEADER_LARGE, true, mOverlayManager);
-            handleOverlays(ThemesUtils.HEADER_XLARGE, false, mOverlayManager);
-            break;
-            case "3":
-            handleOverlays(ThemesUtils.HEADER_LARGE, false, mOverlayManager);
-            handleOverlays(ThemesUtils.HEADER_XLARGE, true, mOverlayManager);
-            break;
-        }
-        try {
-             mOverlayService.reloadAndroidAssets(UserHandle.USER_CURRENT);
-             mOverlayService.reloadAssets("com.android.settings", UserHandle.USER_CURRENT);
-             mOverlayService.reloadAssets("com.android.systemui", UserHandle.USER_CURRENT);
-         } catch (RemoteException ignored) {
-         }
-        return true;
+        if (preference == mnbSwitch) {
+            int index = Integer.parseInt((String) objValue) - 2;
+            Set<String> affected = mOverlayReconciler.applyExclusive(NAVBAR_COLORS,
+                    index >= 0 ? NAVBAR_COLORS[index] : null);
+            mOverlayReconciler.reloadAssets(affected);
+            return true;
+        } else if (preference == mhdSize) {
+            int index = Integer.parseInt((String) objValue) - 2;
+            Set<String> affected = mOverlayReconciler.applyExclusive(HEADER_SIZES,
+                    index >= 0 ? HEADER_SIZES[index] : null);
+            mOverlayReconciler.reloadAssets(affected);
+            return true;
         } else if (preference == mSbHeight) {
-        String sbheight = (String) objValue;
-        int sbheightValue = Integer.parseInt(sbheight);
-        mSbHeight.setValue(String.valueOf(sbheightValue));
-        String overlayName = getOverlayName(ThemesUtils.STATUSBAR_HEIGHT);
-            if (overlayName != null) {
-                handleOverlays(overlayName, false, mOverlayManager);
-            }
-            if (sbheightValue > 1) {
-                handleOverlays(ThemesUtils.STATUSBAR_HEIGHT[sbheightValue -2],
-                        true, mOverlayManager);
-        }
-        mSbHeight.setSummary(mSbHeight.getEntry());
-        return true;
+            String sbheight = (String) objValue;
+            int sbheightValue = Integer.parseInt(sbheight);
+            mSbHeight.setValue(String.valueOf(sbheightValue));
+            mOverlayReconciler.applyExclusive(ThemesUtils.STATUSBAR_HEIGHT,
+                    sbheightValue > 1 ? ThemesUtils.STATUSBAR_HEIGHT[sbheightValue - 2] : null);
+            mSbHeight.setSummary(mSbHeight.getEntry());
+            return true;
         }
         return false;
     }
 
-    private int getOverlayPosition(String[] overlays) {
-        int position = -1;
-        for (int i = 0; i < overlays.length; i++) {
-            String overlay = overlays[i];
-            if (derpUtils.isThemeEnabled(overlay)) {
-                position = i;
-            }
-        }
-        return position;
-    }
-
-    private String getOverlayName(String[] overlays) {
-        String overlayName = null;
-        for (int i = 0; i < overlays.length; i++) {
-            String overlay = overlays[i];
-            if (derpUtils.isThemeEnabled(overlay)) {
-                overlayName = overlay;
-            }
-        }
-        return overlayName;
-    }
-
     private void setupNavbarSwitchPref() {
         mnbSwitch = (ListPreference) findPreference(PREF_NB_COLOR);
         mnbSwitch.setOnPreferenceChangeListener(this);
-        if (derpUtils.isNavbarColor("com.gnonymous.gvisualmod.pgm_rose")){
-            mnbSwitch.setValue("6");
-        } else if (derpUtils.isNavbarColor("com.gnonymous.gvisualmod.pgm_blue")){
-            mnbSwitch.setValue("5");
-        } else if (derpUtils.isNavbarColor("com.gnonymous.gvisualmod.pgm_purp")){
-            mnbSwitch.setValue("4");
-        } else if (derpUtils.isNavbarColor("com.gnonymous.gvisualmod.pgm_oprd")){
-            mnbSwitch.setValue("3");
-        } else if (derpUtils.isNavbarColor("com.gnonymous.gvisualmod.pgm_orcd")){
-            mnbSwitch.setValue("2");
-        }
-        else{
-            mnbSwitch.setValue("1");
-        }
+        int index = mOverlayIndex.getEnabledIndex(NAVBAR_COLORS);
+        mnbSwitch.setValue(String.valueOf(index + 2));
     }
 
     private void setupHeaderSwitchPref() {
         mhdSize = (ListPreference) findPreference(PREF_HD_SIZE);
         mhdSize.setOnPreferenceChangeListener(this);
-        if (derpUtils.isThemeEnabled("com.android.theme.header.xlarge")){
-            mhdSize.setValue("3");
-        } else if (derpUtils.isThemeEnabled("com.android.theme.header.large")){
-            mhdSize.setValue("2");
-        }
-        else{
-            mhdSize.setValue("1");
-        }
+        int index = mOverlayIndex.getEnabledIndex(HEADER_SIZES);
+        mhdSize.setValue(String.valueOf(index + 2));
     }
 
     @Override
@@ -43,6 +43,8 @@ import com.android.internal.logging.nano.MetricsProto;
 import com.derp.support.preference.CustomSeekBarPreference;
 import com.derp.support.preference.SecureSettingSwitchPreference;
 
+import com.derpquest.settings.utils.DebouncedSettingsWriter;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -62,6 +64,9 @@ public class Miscellaneous extends SettingsPreferenceFragment implements
     private CustomSeekBarPreference mCornerRadius;
     private SecureSettingSwitchPreference mRoundedFwvals;
 
+    private DebouncedSettingsWriter mSystemWriter;
+    private DebouncedSettingsWriter mSecureWriter;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -70,6 +75,9 @@ public class Miscellaneous extends SettingsPreferenceFragment implements
         final ContentResolver resolver = getActivity().getContentResolver();
         final PreferenceScreen prefScreen = getPreferenceScreen();
 
+        mSystemWriter = DebouncedSettingsWriter.system(resolver);
+        mSecureWriter = DebouncedSettingsWriter.secure(resolver).forUser(UserHandle.USER_CURRENT);
+
         // volume key cursor control
         mVolumeKeyCursorControl = (ListPreference) findPreference(VOLUME_KEY_CURSOR_CONTROL);
         if (mVolumeKeyCursorControl != null) {
@@ -136,17 +144,14 @@ public class Miscellaneous extends SettingsPreferenceFragment implements
             return true;
         } else if (preference == mPulseBrightness) {
             int value = (Integer) newValue;
-            Settings.System.putInt(getContentResolver(),
-                    Settings.System.PULSE_BRIGHTNESS, value);
+            mSystemWriter.putInt(Settings.System.PULSE_BRIGHTNESS, value);
             return true;
         } else if (preference == mDozeBrightness) {
             int value = (Integer) newValue;
-            Settings.System.putInt(getContentResolver(),
-                    Settings.System.DOZE_BRIGHTNESS, value);
+            mSystemWriter.putInt(Settings.System.DOZE_BRIGHTNESS, value);
             return true;
         } else if (preference == mCornerRadius) {
-            Settings.Secure.putIntForUser(getContext().getContentResolver(), Settings.Secure.SYSUI_ROUNDED_SIZE,
-                    (int) newValue, UserHandle.USER_CURRENT);
+            mSecureWriter.putInt(Settings.Secure.SYSUI_ROUNDED_SIZE, (int) newValue);
             return true;
         } else if (preference == mRoundedFwvals) {
             restoreCorners();
@@ -171,6 +176,13 @@ public class Miscellaneous extends SettingsPreferenceFragment implements
 
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        mSystemWriter.flush();
+        mSecureWriter.flush();
+    }
+
     @Override
     public int getMetricsCategory() {
         return MetricsProto.MetricsEvent.DERP;
@@ -19,7 +19,6 @@ package com.derpquest.settings.fragments.system_misc;
 import android.app.TimePickerDialog;
 import android.content.ContentResolver;
 import android.content.Context;
-import android.database.ContentObserver;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.UserHandle;
@@ -39,8 +38,12 @@ import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
 import com.android.settingslib.widget.LayoutPreference;
 
-import java.time.format.DateTimeFormatter;
+import com.derpquest.settings.utils.AutoSchedule;
+import com.derpquest.settings.utils.SolarCalculator;
+import com.derpquest.settings.utils.SettingsObserverHub;
+
 import java.time.LocalTime;
+import java.time.ZoneId;
 
 public class SleepMode extends SettingsPreferenceFragment implements
         Preference.OnPreferenceClickListener, Preference.OnPreferenceChangeListener {
@@ -90,8 +93,11 @@ public class SleepMode extends SettingsPreferenceFragment implements
         mHandler = new Handler();
         mContentResolver = getActivity().getContentResolver();
 
-        SettingsObserver settingsObserver = new SettingsObserver(new Handler());
-        settingsObserver.observe();
+        SettingsObserverHub hub = SettingsObserverHub.getInstance(mContext);
+        hub.observe(this, Settings.Secure.getUriFor(Settings.Secure.SLEEP_MODE_ENABLED),
+                uri -> updateStateInternal());
+        hub.observe(this, Settings.Secure.getUriFor(Settings.Secure.SLEEP_MODE_AUTO_MODE),
+                uri -> updateStateInternal());
 
         mSincePref = findPreference(SINCE_PREF_KEY);
         mSincePref.setOnPreferenceClickListener(this);
@@ -137,21 +143,14 @@ public class SleepMode extends SettingsPreferenceFragment implements
     @Override
     public boolean onPreferenceClick(Preference preference) {
         if (preference == mSincePref || preference == mTillPref) {
-            String[] times = getCustomTimeSetting();
+            AutoSchedule schedule = getSchedule(Integer.parseInt(mModePref.getValue()));
             boolean isSince = preference == mSincePref;
-            int hour, minute;
             TimePickerDialog.OnTimeSetListener listener = (view, hourOfDay, minute1) -> {
                 updateTimeSetting(isSince, hourOfDay, minute1);
             };
-            if (isSince) {
-                String[] sinceValues = times[0].split(":", 0);
-                hour = Integer.parseInt(sinceValues[0]);
-                minute = Integer.parseInt(sinceValues[1]);
-            } else {
-                String[] tillValues = times[1].split(":", 0);
-                hour = Integer.parseInt(tillValues[0]);
-                minute = Integer.parseInt(tillValues[1]);
-            }
+            LocalTime time = isSince ? schedule.getSince() : schedule.getTill();
+            int hour = time.getHour();
+            int minute = time.getMinute();
             TimePickerDialog dialog = new TimePickerDialog(mContext, listener,
                     hour, minute, DateFormat.is24HourFormat(mContext));
             dialog.show();
@@ -160,11 +159,9 @@ public class SleepMode extends SettingsPreferenceFragment implements
         return false;
     }
 
-    private String[] getCustomTimeSetting() {
-        String value = Settings.Secure.getStringForUser(mContentResolver,
-                Settings.Secure.SLEEP_MODE_AUTO_TIME, UserHandle.USER_CURRENT);
-        if (value == null || value.equals("")) value = "20:00,07:00";
-        return value.split(",", 0);
+    private AutoSchedule getSchedule(int mode) {
+        return AutoSchedule.of(mode, Settings.Secure.getStringForUser(mContentResolver,
+                Settings.Secure.SLEEP_MODE_AUTO_TIME, UserHandle.USER_CURRENT));
     }
 
     private void updateTimeEnablement(int mode) {
@@ -173,53 +170,44 @@ public class SleepMode extends SettingsPreferenceFragment implements
     }
 
     private void updateTimeSummary(int mode) {
-        updateTimeSummary(getCustomTimeSetting(), mode);
+        updateTimeSummary(getSchedule(mode));
     }
 
-    private void updateTimeSummary(String[] times, int mode) {
-        if (mode == 0) {
+    private void updateTimeSummary(AutoSchedule schedule) {
+        if (schedule.getMode() == AutoSchedule.MODE_DISABLED) {
             mSincePref.setSummary("-");
             mTillPref.setSummary("-");
             return;
         }
 
-        if (mode == 1) {
-            mSincePref.setSummary(R.string.sleep_mode_schedule_sunset);
-            mTillPref.setSummary(R.string.sleep_mode_schedule_sunrise);
-            return;
+        boolean is24Hour = DateFormat.is24HourFormat(mContext);
+        SolarCalculator.SunTimes sun = schedule.startsAtSunset() || schedule.endsAtSunrise()
+                ? SolarCalculator.getToday(mContext) : null;
+        ZoneId zone = ZoneId.systemDefault();
+        if (schedule.startsAtSunset()) {
+            mSincePref.setSummary(SolarCalculator.formatEvent(mContext,
+                    R.string.sleep_mode_schedule_sunset, sun != null ? sun.getSunset(zone) : null,
+                    is24Hour));
+        } else {
+            mSincePref.setSummary(AutoSchedule.format(schedule.getSince(), is24Hour));
         }
-
-        String outputFormat = DateFormat.is24HourFormat(mContext) ? "HH:mm" : "h:mm a";
-        DateTimeFormatter outputFormatter = DateTimeFormatter.ofPattern(outputFormat);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        LocalTime sinceDT = LocalTime.parse(times[0], formatter);
-        LocalTime tillDT = LocalTime.parse(times[1], formatter);
-
-        if (mode == 3) {
-            mSincePref.setSummary(R.string.sleep_mode_schedule_sunset);
-            mTillPref.setSummary(tillDT.format(outputFormatter));
-        } else if (mode == 4) {
-            mTillPref.setSummary(R.string.sleep_mode_schedule_sunrise);
-            mSincePref.setSummary(sinceDT.format(outputFormatter));
+        if (schedule.endsAtSunrise()) {
+            mTillPref.setSummary(SolarCalculator.formatEvent(mContext,
+                    R.string.sleep_mode_schedule_sunrise, sun != null ? sun.getSunrise(zone) : null,
+                    is24Hour));
         } else {
-            mSincePref.setSummary(sinceDT.format(outputFormatter));
-            mTillPref.setSummary(tillDT.format(outputFormatter));
+            mTillPref.setSummary(AutoSchedule.format(schedule.getTill(), is24Hour));
         }
     }
 
     private void updateTimeSetting(boolean since, int hour, int minute) {
-        String[] times = getCustomTimeSetting();
-        String nHour = "";
-        String nMinute = "";
-        if (hour < 10) nHour += "0";
-        if (minute < 10) nMinute += "0";
-        nHour += String.valueOf(hour);
-        nMinute += String.valueOf(minute);
-        times[since ? 0 : 1] = nHour + ":" + nMinute;
+        AutoSchedule schedule = getSchedule(Integer.parseInt(mModePref.getValue()));
+        LocalTime time = LocalTime.of(hour, minute);
+        schedule = since ? schedule.withSince(time) : schedule.withTill(time);
         Settings.Secure.putStringForUser(mContentResolver,
                 Settings.Secure.SLEEP_MODE_AUTO_TIME,
-                times[0] + "," + times[1], UserHandle.USER_CURRENT);
-        updateTimeSummary(times, Integer.parseInt(mModePref.getValue()));
+                schedule.getTimesValue(), UserHandle.USER_CURRENT);
+        updateTimeSummary(schedule);
     }
 
     private void updateStateInternal() {
@@ -231,15 +219,10 @@ public class SleepMode extends SettingsPreferenceFragment implements
                 MODE_KEY, 0, UserHandle.USER_CURRENT);
         boolean isActivated = Settings.Secure.getIntForUser(mContentResolver,
                 Settings.Secure.SLEEP_MODE_ENABLED, 0, UserHandle.USER_CURRENT) == 1;
-        String timeValue = Settings.Secure.getStringForUser(mContext.getContentResolver(),
-                Settings.Secure.SLEEP_MODE_AUTO_TIME, UserHandle.USER_CURRENT);
-        if (timeValue == null || timeValue.equals("")) timeValue = "20:00,07:00";
-        String[] time = timeValue.split(",", 0);
-        String outputFormat = DateFormat.is24HourFormat(mContext) ? "HH:mm" : "h:mm a";
-        DateTimeFormatter outputFormatter = DateTimeFormatter.ofPattern(outputFormat);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        LocalTime sinceValue = LocalTime.parse(time[0], formatter);
-        LocalTime tillValue = LocalTime.parse(time[1], formatter);
+        AutoSchedule schedule = getSchedule(mode);
+        boolean is24Hour = DateFormat.is24HourFormat(mContext);
+        String sinceValue = AutoSchedule.format(schedule.getSince(), is24Hour);
+        String tillValue = AutoSchedule.format(schedule.getTill(), is24Hour);
 
         String buttonText;
 
@@ -255,21 +238,21 @@ public class SleepMode extends SettingsPreferenceFragment implements
                 break;
             case 2:
                 if (isActivated) {
-                    buttonText = mContext.getString(R.string.night_display_activation_off_custom, sinceValue.format(outputFormatter));
+                    buttonText = mContext.getString(R.string.night_display_activation_off_custom, sinceValue);
                 } else {
-                    buttonText = mContext.getString(R.string.night_display_activation_on_custom, tillValue.format(outputFormatter));
+                    buttonText = mContext.getString(R.string.night_display_activation_on_custom, tillValue);
                 }
                 break;
             case 3:
                 if (isActivated) {
                     buttonText = mContext.getString(R.string.night_display_activation_off_twilight);
                 } else {
-                    buttonText = mContext.getString(R.string.night_display_activation_on_custom, tillValue.format(outputFormatter));
+                    buttonText = mContext.getString(R.string.night_display_activation_on_custom, tillValue);
                 }
                 break;
             case 4:
                 if (isActivated) {
-                    buttonText = mContext.getString(R.string.night_display_activation_off_custom, sinceValue.format(outputFormatter));
+                    buttonText = mContext.getString(R.string.night_display_activation_off_custom, sinceValue);
                 } else {
                     buttonText = mContext.getString(R.string.night_display_activation_on_twilight);
                 }
@@ -296,27 +279,6 @@ public class SleepMode extends SettingsPreferenceFragment implements
                 Settings.Secure.SLEEP_MODE_ENABLED, enable ? 1 : 0, UserHandle.USER_CURRENT);
     }
 
-    private class SettingsObserver extends ContentObserver {
-        SettingsObserver(Handler handler) {
-            super(handler);
-        }
-
-        void observe() {
-            ContentResolver resolver = mContentResolver;
-            resolver.registerContentObserver(Settings.Secure.getUriFor(
-                    Settings.Secure.SLEEP_MODE_ENABLED), false, this,
-                    UserHandle.USER_ALL);
-            resolver.registerContentObserver(Settings.Secure.getUriFor(
-                    Settings.Secure.SLEEP_MODE_AUTO_MODE), false, this,
-                    UserHandle.USER_ALL);
-        }
-
-        @Override
-        public void onChange(boolean selfChange) {
-            updateStateInternal();
-        }
-    }
-
     @Override
     public int getMetricsCategory() {
         return MetricsProto.MetricsEvent.DERP;
@@ -19,22 +19,81 @@ package com.derpquest.settings.fragments.system_misc;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
+import android.os.UserHandle;
 import android.provider.Settings;
+import android.util.Log;
 
 import com.android.internal.util.custom.SleepModeController;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 public class SleepModeReceiver extends BroadcastReceiver {
 
     private static final String TAG = "SleepModeReceiver";
 
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    // Broadcasts waiting for the queued write, guarded by itself
+    private static final List<PendingResult> sPendingResults = new ArrayList<>();
+    private static long sFirstRequestTime;
+
     public SleepModeReceiver() {
     }
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (intent.getAction() != null &&
-                intent.getAction().equals(SleepModeController.SLEEP_MODE_TURN_OFF)) {
-            Settings.Secure.putInt(context.getContentResolver(), Settings.Secure.SLEEP_MODE_ENABLED, 0);
+        if (!SleepModeController.SLEEP_MODE_TURN_OFF.equals(intent.getAction())) {
+            return;
+        }
+        final PendingResult result = goAsync();
+        final boolean schedule;
+        synchronized (sPendingResults) {
+            // Only receivers registered at runtime get repeats before finish(),
+            // they share the queued write
+            schedule = sPendingResults.isEmpty();
+            if (schedule) {
+                sFirstRequestTime = SystemClock.elapsedRealtime();
+            }
+            sPendingResults.add(result);
+        }
+        if (schedule) {
+            final Context appContext = context.getApplicationContext();
+            sExecutor.execute(() -> turnOff(appContext));
+        }
+    }
+
+    private static void turnOff(Context context) {
+        final long start = SystemClock.elapsedRealtime();
+        boolean written = false;
+        try {
+            // Manifest delivery is serialized, so repeats are caught here instead
+            if (Settings.Secure.getIntForUser(context.getContentResolver(),
+                    Settings.Secure.SLEEP_MODE_ENABLED, 0, UserHandle.USER_CURRENT) != 0) {
+                Settings.Secure.putIntForUser(context.getContentResolver(),
+                        Settings.Secure.SLEEP_MODE_ENABLED, 0, UserHandle.USER_CURRENT);
+                written = true;
+            }
+        } finally {
+            final List<PendingResult> results;
+            final long requested;
+            synchronized (sPendingResults) {
+                results = new ArrayList<>(sPendingResults);
+                sPendingResults.clear();
+                requested = sFirstRequestTime;
+            }
+            final long end = SystemClock.elapsedRealtime();
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Sleep mode " + (written ? "turned off" : "already off") + " for "
+                        + results.size() + " request(s) in " + (end - requested)
+                        + "ms, took " + (end - start) + "ms");
+            }
+            for (PendingResult result : results) {
+                result.finish();
+            }
         }
     }
 }
@@ -21,9 +21,6 @@ import android.app.Dialog;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.os.Bundle;
 import android.os.UserHandle;
@@ -54,13 +51,18 @@ import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.Utils;
 
 import com.derp.support.preference.AppListPreference;
-import com.derp.support.preference.PackageListAdapter;
-import com.derp.support.preference.PackageListAdapter.PackageItem;
+
+import com.derpquest.settings.preferences.AppCatalogAdapter;
+import com.derpquest.settings.utils.AppCatalog.AppItem;
+import com.derpquest.settings.utils.AppInfoCache;
+import com.derpquest.settings.utils.AppInfoCache.AppEntry;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @SearchIndexable
 public class HeadsUp extends SettingsPreferenceFragment implements
@@ -71,8 +73,8 @@ public class HeadsUp extends SettingsPreferenceFragment implements
     private static final String PREF_HEADS_UP_TIME_OUT = "heads_up_time_out";
     private static final String PREF_HEADS_UP_SNOOZE_TIME = "heads_up_snooze_time";
 
-    private PackageListAdapter mPackageAdapter;
-    private PackageManager mPackageManager;
+    private AppCatalogAdapter mPackageAdapter;
+    private AppInfoCache mAppInfoCache;
     private PreferenceGroup mStoplistPrefList;
     private PreferenceGroup mBlacklistPrefList;
     private Preference mAddStoplistPref;
@@ -90,8 +92,8 @@ public class HeadsUp extends SettingsPreferenceFragment implements
         super.onCreate(savedInstanceState);
         addPreferencesFromResource(R.xml.headsup);
 
-        mPackageManager = getPackageManager();
-        mPackageAdapter = new PackageListAdapter(getActivity());
+        mAppInfoCache = AppInfoCache.getInstance(getActivity());
+        mPackageAdapter = new AppCatalogAdapter(getActivity());
 
         mStoplistPrefList = (PreferenceGroup) findPreference("stoplist_applications");
         mStoplistPrefList.setOrderingAsAdded(false);
@@ -209,7 +211,7 @@ public class HeadsUp extends SettingsPreferenceFragment implements
                     @Override
                     public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
                         // Add empty application definition, the user will be able to edit it later
-                        PackageItem info = (PackageItem) parent.getItemAtPosition(position);
+                        AppItem info = (AppItem) parent.getItemAtPosition(position);
                         addCustomApplicationPref(info.packageName, mStoplistPackages);
                         dialog.cancel();
                     }
@@ -220,7 +222,7 @@ public class HeadsUp extends SettingsPreferenceFragment implements
                     @Override
                     public void onItemClick(AdapterView<?> parent,
                             View view, int position, long id) {
-                        PackageItem info = (PackageItem) parent.getItemAtPosition(position);
+                        AppItem info = (AppItem) parent.getItemAtPosition(position);
                         addCustomApplicationPref(info.packageName, mBlacklistPackages);
                         dialog.cancel();
                     }
@@ -268,36 +270,39 @@ public class HeadsUp extends SettingsPreferenceFragment implements
             return;
         }
 
-        // Add the Application Preferences
+        // Only touch the entries that actually changed
         if (mStoplistPrefList != null && mBlacklistPrefList != null) {
-            mStoplistPrefList.removeAll();
-            mBlacklistPrefList.removeAll();
-
-            for (Package pkg : mStoplistPackages.values()) {
-                try {
-                    Preference pref = createPreferenceFromInfo(pkg);
-                    mStoplistPrefList.addPreference(pref);
-                } catch (PackageManager.NameNotFoundException e) {
-                    // Do nothing
-                }
+            reconcilePrefList(mStoplistPrefList, mAddStoplistPref, mStoplistPackages);
+            reconcilePrefList(mBlacklistPrefList, mAddBlacklistPref, mBlacklistPackages);
+        }
+    }
+
+    private void reconcilePrefList(PreferenceGroup prefList, Preference addPref,
+            Map<String,Package> map) {
+        Set<String> existing = new HashSet<String>();
+        for (int i = prefList.getPreferenceCount() - 1; i >= 0; i--) {
+            Preference pref = prefList.getPreference(i);
+            if (pref == addPref) {
+                continue;
+            }
+            if (map.containsKey(pref.getKey())) {
+                existing.add(pref.getKey());
+            } else {
+                prefList.removePreference(pref);
             }
+        }
 
-            for (Package pkg : mBlacklistPackages.values()) {
-                try {
-                    Preference pref = createPreferenceFromInfo(pkg);
-                    mBlacklistPrefList.addPreference(pref);
-                } catch (PackageManager.NameNotFoundException e) {
-                    // Do nothing
-                }
+        for (Package pkg : map.values()) {
+            if (!existing.contains(pkg.name)) {
+                prefList.addPreference(createPreferenceFromInfo(pkg));
             }
         }
 
-        // Keep these at the top
-        mAddStoplistPref.setOrder(0);
-        mAddBlacklistPref.setOrder(0);
-        // Add 'add' options
-        mStoplistPrefList.addPreference(mAddStoplistPref);
-        mBlacklistPrefList.addPreference(mAddBlacklistPref);
+        // Keep 'add' option at the top
+        if (prefList.findPreference(addPref.getKey()) == null) {
+            addPref.setOrder(0);
+            prefList.addPreference(addPref);
+        }
     }
 
     @Override
@@ -328,38 +333,64 @@ public class HeadsUp extends SettingsPreferenceFragment implements
         return true;
     }
 
-     private void addCustomApplicationPref(String packageName, Map<String,Package> map) {
+    private void addCustomApplicationPref(String packageName, Map<String,Package> map) {
         Package pkg = map.get(packageName);
         if (pkg == null) {
             pkg = new Package(packageName);
             map.put(packageName, pkg);
-            savePackageList(false, map);
-            refreshCustomApplicationPrefs();
+            savePackageList(true, map);
+            getPrefListFor(map).addPreference(createPreferenceFromInfo(pkg));
         }
     }
 
-    private Preference createPreferenceFromInfo(Package pkg)
-            throws PackageManager.NameNotFoundException {
-        PackageInfo info = mPackageManager.getPackageInfo(pkg.name,
-                PackageManager.GET_META_DATA);
-        Preference pref =
+    private Preference createPreferenceFromInfo(Package pkg) {
+        final Preference pref =
                 new AppListPreference(getActivity());
 
         pref.setKey(pkg.name);
-        pref.setTitle(info.applicationInfo.loadLabel(mPackageManager));
-        pref.setIcon(info.applicationInfo.loadIcon(mPackageManager));
         pref.setPersistent(false);
         pref.setOnPreferenceClickListener(this);
+
+        AppEntry entry = mAppInfoCache.peek(pkg.name);
+        if (entry != null) {
+            pref.setTitle(entry.label);
+            pref.setIcon(entry.newIcon());
+            return pref;
+        }
+
+        // Placeholder until the label and icon are loaded in the background
+        pref.setTitle(pkg.name);
+        pref.setIcon(android.R.drawable.sym_def_app_icon);
+        mAppInfoCache.load(pkg.name, (packageName, loaded) -> {
+            if (loaded == null) {
+                // Not installed, don't list it
+                PreferenceGroup parent = pref.getParent();
+                if (parent != null) {
+                    parent.removePreference(pref);
+                }
+                return;
+            }
+            pref.setTitle(loaded.label);
+            pref.setIcon(loaded.newIcon());
+        });
         return pref;
     }
 
     private void removeApplicationPref(String packageName, Map<String,Package> map) {
         if (map.remove(packageName) != null) {
-            savePackageList(false, map);
-            refreshCustomApplicationPrefs();
+            savePackageList(true, map);
+            PreferenceGroup prefList = getPrefListFor(map);
+            Preference pref = prefList.findPreference(packageName);
+            if (pref != null) {
+                prefList.removePreference(pref);
+            }
         }
     }
 
+    private PreferenceGroup getPrefListFor(Map<String,Package> map) {
+        return map == mStoplistPackages ? mStoplistPrefList : mBlacklistPrefList;
+    }
+
     private boolean parsePackageList() {
         boolean parsed = false;
 
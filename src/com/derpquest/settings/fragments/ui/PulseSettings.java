@@ -40,6 +40,9 @@ import com.android.settingslib.search.SearchIndexable;
 
 import com.derp.support.colorpicker.ColorPickerSecurePreference;
 
+import com.derpquest.settings.utils.PreferenceRules;
+import com.derpquest.settings.utils.SettingsSnapshot;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -86,41 +89,46 @@ public class PulseSettings extends SettingsPreferenceFragment implements
     private PreferenceCategory mFadingBarsCat;
     private PreferenceCategory mSolidBarsCat;
 
+    private SettingsSnapshot mSettings;
+    private PreferenceRules mRules;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         addPreferencesFromResource(R.xml.pulse_settings);
 
-        ContentResolver resolver = getContext().getContentResolver();
+        mSettings = SettingsSnapshot.secure(getContentResolver(),
+                Settings.Secure.NAVBAR_PULSE_ENABLED,
+                Settings.Secure.LOCKSCREEN_PULSE_ENABLED,
+                Settings.Secure.QS_PULSE_ENABLED,
+                Settings.Secure.AMBIENT_PULSE_ENABLED,
+                Settings.Secure.PULSE_COLOR_USER,
+                Settings.Secure.PULSE_COLOR_MODE,
+                Settings.Secure.PULSE_RENDER_STYLE).forUser(UserHandle.USER_CURRENT);
 
         mNavbarPulse = (SwitchPreference) findPreference(NAVBAR_PULSE_ENABLED_KEY);
-        boolean navbarPulse = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.NAVBAR_PULSE_ENABLED, 0, UserHandle.USER_CURRENT) != 0;
+        boolean navbarPulse = mSettings.getInt(Settings.Secure.NAVBAR_PULSE_ENABLED, 0) != 0;
         mNavbarPulse.setChecked(navbarPulse);
         mNavbarPulse.setOnPreferenceChangeListener(this);
 
         mLockscreenPulse = (SwitchPreference) findPreference(LOCKSCREEN_PULSE_ENABLED_KEY);
-        boolean lockscreenPulse = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.LOCKSCREEN_PULSE_ENABLED, 0, UserHandle.USER_CURRENT) != 0;
+        boolean lockscreenPulse = mSettings.getInt(Settings.Secure.LOCKSCREEN_PULSE_ENABLED, 0) != 0;
         mLockscreenPulse.setChecked(lockscreenPulse);
         mLockscreenPulse.setOnPreferenceChangeListener(this);
 
         mQsPulse = (SwitchPreference) findPreference(QS_PULSE_ENABLED_KEY);
-        boolean qsPulse = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.QS_PULSE_ENABLED, 0, UserHandle.USER_CURRENT) != 0;
+        boolean qsPulse = mSettings.getInt(Settings.Secure.QS_PULSE_ENABLED, 0) != 0;
         mQsPulse.setChecked(qsPulse);
         mQsPulse.setOnPreferenceChangeListener(this);
 
         mAmbientPulse = (SwitchPreference) findPreference(AMBIENT_PULSE_ENABLED_KEY);
-        boolean ambientPulse = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.AMBIENT_PULSE_ENABLED, 0, UserHandle.USER_CURRENT) != 0;
+        boolean ambientPulse = mSettings.getInt(Settings.Secure.AMBIENT_PULSE_ENABLED, 0) != 0;
         mAmbientPulse.setChecked(ambientPulse);
         mAmbientPulse.setOnPreferenceChangeListener(this);
 
         mColorModePref = (ListPreference) findPreference(PULSE_COLOR_MODE_KEY);
         mColorPickerPref = (ColorPickerSecurePreference) findPreference(PULSE_COLOR_MODE_CHOOSER_KEY);
-        int userColor = Settings.Secure.getInt(getContentResolver(),
-                Settings.Secure.PULSE_COLOR_USER, 0xffffffff);
+        int userColor = mSettings.getInt(Settings.Secure.PULSE_COLOR_USER, 0xffffffff);
         mColorPickerPref.setOnPreferenceChangeListener(this);
         mLavaSpeedPref = findPreference(PULSE_COLOR_MODE_LAVA_SPEED_KEY);
         mColorModePref.setOnPreferenceChangeListener(this);
@@ -141,117 +149,91 @@ public class PulseSettings extends SettingsPreferenceFragment implements
 
         mPulseGravity = (ListPreference) findPreference(PULSE_CUSTOM_GRAVITY);
 
-        updateAllPrefs();
+        bindRules();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mSettings.close();
     }
 
     @Override
     public boolean onPreferenceChange(Preference preference, Object newValue) {
-        ContentResolver resolver = getContext().getContentResolver();
         if (preference == mNavbarPulse) {
             boolean val = (Boolean) newValue;
-            Settings.Secure.putIntForUser(resolver,
-                Settings.Secure.NAVBAR_PULSE_ENABLED, val ? 1 : 0, UserHandle.USER_CURRENT);
-            updateAllPrefs();
+            mSettings.putInt(Settings.Secure.NAVBAR_PULSE_ENABLED, val ? 1 : 0);
+            mRules.set(Settings.Secure.NAVBAR_PULSE_ENABLED, val);
             return true;
         } else if (preference == mLockscreenPulse) {
             boolean val = (Boolean) newValue;
-            Settings.Secure.putIntForUser(resolver,
-                Settings.Secure.LOCKSCREEN_PULSE_ENABLED, val ? 1 : 0, UserHandle.USER_CURRENT);
-            updateAllPrefs();
+            mSettings.putInt(Settings.Secure.LOCKSCREEN_PULSE_ENABLED, val ? 1 : 0);
+            mRules.set(Settings.Secure.LOCKSCREEN_PULSE_ENABLED, val);
             return true;
         } else if (preference == mQsPulse) {
             boolean val = (Boolean) newValue;
-            Settings.Secure.putIntForUser(resolver,
-                Settings.Secure.QS_PULSE_ENABLED, val ? 1 : 0, UserHandle.USER_CURRENT);
-            updateAllPrefs();
+            mSettings.putInt(Settings.Secure.QS_PULSE_ENABLED, val ? 1 : 0);
+            mRules.set(Settings.Secure.QS_PULSE_ENABLED, val);
             return true;
         } else if (preference == mAmbientPulse) {
             boolean val = (Boolean) newValue;
-            Settings.Secure.putIntForUser(resolver,
-                Settings.Secure.AMBIENT_PULSE_ENABLED, val ? 1 : 0, UserHandle.USER_CURRENT);
-            updateAllPrefs();
+            mSettings.putInt(Settings.Secure.AMBIENT_PULSE_ENABLED, val ? 1 : 0);
+            mRules.set(Settings.Secure.AMBIENT_PULSE_ENABLED, val);
             return true;
         } else if (preference == mColorPickerPref) {
             int value = (Integer) newValue;
-            Settings.Secure.putInt(resolver,
-                    Settings.Secure.PULSE_COLOR_USER, value);
+            mSettings.putInt(Settings.Secure.PULSE_COLOR_USER, value);
             return true;
         } else if (preference == mColorModePref) {
-            updateColorPrefs(Integer.valueOf(String.valueOf(newValue)));
+            mRules.set(Settings.Secure.PULSE_COLOR_MODE, Integer.valueOf(String.valueOf(newValue)));
             return true;
         } else if (preference == mRenderMode) {
-            updateRenderCategories(Integer.valueOf(String.valueOf(newValue)));
+            mRules.set(Settings.Secure.PULSE_RENDER_STYLE, Integer.valueOf(String.valueOf(newValue)));
             return true;
         }
         return false;
     }
 
-    private void updateAllPrefs() {
-        ContentResolver resolver = getContext().getContentResolver();
-
-        boolean navbarPulse = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.NAVBAR_PULSE_ENABLED, 0, UserHandle.USER_CURRENT) != 0;
-        boolean lockscreenPulse = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.LOCKSCREEN_PULSE_ENABLED, 0, UserHandle.USER_CURRENT) != 0;
-        boolean qsPulse = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.QS_PULSE_ENABLED, 1, UserHandle.USER_CURRENT) != 0;
-
-        boolean ambientPulse = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.AMBIENT_PULSE_ENABLED, 1, UserHandle.USER_CURRENT) != 0;
-
-        mPulseSmoothing.setEnabled(navbarPulse || lockscreenPulse || qsPulse || ambientPulse);
-
-        mPulseCenterMirrored.setEnabled(navbarPulse || lockscreenPulse || qsPulse || ambientPulse);
-
-        mPulseVerticalMirror.setEnabled(navbarPulse || lockscreenPulse || qsPulse || ambientPulse);
-
-        mPulseGravity.setEnabled(navbarPulse || lockscreenPulse || qsPulse || ambientPulse);
-
-        mColorModePref.setEnabled(navbarPulse || lockscreenPulse || qsPulse || ambientPulse);
-        if (navbarPulse || lockscreenPulse || qsPulse) {
-            int colorMode = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.PULSE_COLOR_MODE, COLOR_TYPE_LAVALAMP, UserHandle.USER_CURRENT);
-            updateColorPrefs(colorMode);
-        } else {
-            mColorPickerPref.setEnabled(false);
-            mLavaSpeedPref.setEnabled(false);
-        }
-
-        mRenderMode.setEnabled(navbarPulse || lockscreenPulse || qsPulse || ambientPulse);
-        if (navbarPulse || lockscreenPulse || qsPulse || ambientPulse) {
-            int renderMode = Settings.Secure.getIntForUser(resolver,
-                Settings.Secure.PULSE_RENDER_STYLE, RENDER_STYLE_SOLID_LINES, UserHandle.USER_CURRENT);
-            updateRenderCategories(renderMode);
-        } else {
-            mFadingBarsCat.setEnabled(false);
-            mSolidBarsCat.setEnabled(false);
-        }
-    }
-
-    private void updateColorPrefs(int val) {
-        switch (val) {
-            case COLOR_TYPE_ACCENT:
-                mColorPickerPref.setEnabled(false);
-                mLavaSpeedPref.setEnabled(false);
-                break;
-            case COLOR_TYPE_USER:
-                mColorPickerPref.setEnabled(true);
-                mLavaSpeedPref.setEnabled(false);
-                break;
-            case COLOR_TYPE_LAVALAMP:
-                mColorPickerPref.setEnabled(false);
-                mLavaSpeedPref.setEnabled(true);
-                break;
-            case COLOR_TYPE_AUTO:
-                mColorPickerPref.setEnabled(false);
-                mLavaSpeedPref.setEnabled(false);
-                break;
-        }
-    }
-
-    private void updateRenderCategories(int mode) {
-        mFadingBarsCat.setEnabled(mode == RENDER_STYLE_FADING_BARS);
-        mSolidBarsCat.setEnabled(mode == RENDER_STYLE_SOLID_LINES);
+    private void bindRules() {
+        final PreferenceRules.Expr anyPulse = PreferenceRules.anyOf(
+                PreferenceRules.isOn(Settings.Secure.NAVBAR_PULSE_ENABLED),
+                PreferenceRules.isOn(Settings.Secure.LOCKSCREEN_PULSE_ENABLED),
+                PreferenceRules.isOn(Settings.Secure.QS_PULSE_ENABLED),
+                PreferenceRules.isOn(Settings.Secure.AMBIENT_PULSE_ENABLED));
+        // Ambient pulse has no color options
+        final PreferenceRules.Expr colorPulse = PreferenceRules.anyOf(
+                PreferenceRules.isOn(Settings.Secure.NAVBAR_PULSE_ENABLED),
+                PreferenceRules.isOn(Settings.Secure.LOCKSCREEN_PULSE_ENABLED),
+                PreferenceRules.isOn(Settings.Secure.QS_PULSE_ENABLED));
+
+        mRules = new PreferenceRules()
+                .define(Settings.Secure.NAVBAR_PULSE_ENABLED,
+                        mSettings.getInt(Settings.Secure.NAVBAR_PULSE_ENABLED, 0))
+                .define(Settings.Secure.LOCKSCREEN_PULSE_ENABLED,
+                        mSettings.getInt(Settings.Secure.LOCKSCREEN_PULSE_ENABLED, 0))
+                .define(Settings.Secure.QS_PULSE_ENABLED,
+                        mSettings.getInt(Settings.Secure.QS_PULSE_ENABLED, 0))
+                .define(Settings.Secure.AMBIENT_PULSE_ENABLED,
+                        mSettings.getInt(Settings.Secure.AMBIENT_PULSE_ENABLED, 0))
+                .define(Settings.Secure.PULSE_COLOR_MODE,
+                        mSettings.getInt(Settings.Secure.PULSE_COLOR_MODE, COLOR_TYPE_LAVALAMP))
+                .define(Settings.Secure.PULSE_RENDER_STYLE,
+                        mSettings.getInt(Settings.Secure.PULSE_RENDER_STYLE, RENDER_STYLE_SOLID_LINES))
+                .enableWhen(anyPulse, mPulseSmoothing, mPulseCenterMirrored,
+                        mPulseVerticalMirror, mPulseGravity, mColorModePref, mRenderMode)
+                .enableWhen(PreferenceRules.allOf(colorPulse,
+                        PreferenceRules.is(Settings.Secure.PULSE_COLOR_MODE, COLOR_TYPE_USER)),
+                        mColorPickerPref)
+                .enableWhen(PreferenceRules.allOf(colorPulse,
+                        PreferenceRules.is(Settings.Secure.PULSE_COLOR_MODE, COLOR_TYPE_LAVALAMP)),
+                        mLavaSpeedPref)
+                .enableWhen(PreferenceRules.allOf(anyPulse,
+                        PreferenceRules.is(Settings.Secure.PULSE_RENDER_STYLE, RENDER_STYLE_FADING_BARS)),
+                        mFadingBarsCat)
+                .enableWhen(PreferenceRules.allOf(anyPulse,
+                        PreferenceRules.is(Settings.Secure.PULSE_RENDER_STYLE, RENDER_STYLE_SOLID_LINES)),
+                        mSolidBarsCat);
+        mRules.bind();
     }
 
     @Override
@@ -7,11 +7,11 @@ import android.os.Bundle;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.os.UserHandle;
 import android.content.ContentResolver;
 import android.content.res.Resources;
+import android.graphics.drawable.BitmapDrawable;
 import androidx.preference.ListPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
@@ -33,11 +33,13 @@ import com.android.settings.Utils;
 import com.derp.support.preference.CustomSeekBarPreference;
 import com.derp.support.preference.SystemSettingSwitchPreference;
 
+import com.derpquest.settings.utils.DebouncedSettingsWriter;
+import com.derpquest.settings.utils.HeaderImageProcessor;
+import com.derpquest.settings.utils.HeaderPackRegistry;
+import com.derpquest.settings.utils.ImageThumbnailLoader;
+
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 @SearchIndexable
 public class QSHeader extends SettingsPreferenceFragment implements
@@ -51,6 +53,8 @@ public class QSHeader extends SettingsPreferenceFragment implements
     private SwitchPreference mHeaderEnabled;
     private Preference mFileHeader;
     private String mFileHeaderProvider;
+    private DebouncedSettingsWriter mShadowWriter;
+    private boolean mHeaderPacksLoaded;
 
     private static final String CUSTOM_HEADER_BROWSE = "custom_header_browse";
     private static final String CUSTOM_HEADER_IMAGE = "status_bar_custom_header";
@@ -78,17 +82,23 @@ public class QSHeader extends SettingsPreferenceFragment implements
 
         mDaylightHeaderPack = (ListPreference) findPreference(DAYLIGHT_HEADER_PACK);
 
-        List<String> entries = new ArrayList<String>();
-        List<String> values = new ArrayList<String>();
-        getAvailableHeaderPacks(entries, values);
-        mDaylightHeaderPack.setEntries(entries.toArray(new String[entries.size()]));
-        mDaylightHeaderPack.setEntryValues(values.toArray(new String[values.size()]));
-
-        boolean headerEnabled = Settings.System.getInt(resolver,
-                Settings.System.STATUS_BAR_CUSTOM_HEADER, 0) != 0;
-        updateHeaderProviderSummary(headerEnabled);
         mDaylightHeaderPack.setOnPreferenceChangeListener(this);
-
+        // The dialog needs both arrays, keep it closed until the packs are in
+        mDaylightHeaderPack.setEntries(new CharSequence[0]);
+        mDaylightHeaderPack.setEntryValues(new CharSequence[0]);
+        HeaderPackRegistry.getInstance(getContext()).load(packs -> {
+            if (getActivity() == null) {
+                return;
+            }
+            mDaylightHeaderPack.setEntries(packs.entries);
+            mDaylightHeaderPack.setEntryValues(packs.values);
+            mHeaderPacksLoaded = true;
+            updateHeaderPackEnabled();
+            updateHeaderProviderSummary(Settings.System.getInt(getContentResolver(),
+                    Settings.System.STATUS_BAR_CUSTOM_HEADER, 0) != 0);
+        });
+
+        mShadowWriter = DebouncedSettingsWriter.system(resolver);
         mHeaderShadow = (CustomSeekBarPreference) findPreference(CUSTOM_HEADER_IMAGE_SHADOW);
         final int headerShadow = Settings.System.getInt(resolver,
                 Settings.System.STATUS_BAR_CUSTOM_HEADER_SHADOW, 0);
@@ -109,13 +119,25 @@ public class QSHeader extends SettingsPreferenceFragment implements
         mHeaderProvider.setValueIndex(valueIndex >= 0 ? valueIndex : 0);
         mHeaderProvider.setSummary(mHeaderProvider.getEntry());
         mHeaderProvider.setOnPreferenceChangeListener(this);
-        mDaylightHeaderPack.setEnabled(providerName.equals(mDaylightHeaderProvider));
+        updateHeaderPackEnabled();
+        updateHeaderProviderSummary(mHeaderEnabled.isChecked());
 
         mFileHeader = findPreference(FILE_HEADER_SELECT);
         mFileHeader.setEnabled(providerName.equals(mFileHeaderProvider));
+        updateFileHeaderPreview(Settings.System.getString(resolver,
+                Settings.System.STATUS_BAR_FILE_HEADER_IMAGE));
+    }
+
+    private void updateHeaderPackEnabled() {
+        mDaylightHeaderPack.setEnabled(mHeaderPacksLoaded
+                && mDaylightHeaderProvider.equals(mHeaderProvider.getValue()));
     }
 
     private void updateHeaderProviderSummary(boolean headerEnabled) {
+        if (headerEnabled && !mHeaderPacksLoaded) {
+            mDaylightHeaderPack.setSummary(R.string.header_packs_loading);
+            return;
+        }
         mDaylightHeaderPack.setSummary(getResources().getString(R.string.header_provider_disabled));
         if (headerEnabled) {
             String settingHeaderPackage = Settings.System.getString(getActivity().getContentResolver(),
@@ -147,8 +169,8 @@ public class QSHeader extends SettingsPreferenceFragment implements
             case CUSTOM_HEADER_IMAGE_SHADOW:
                 Integer headerShadow = (Integer) newValue;
                 int realHeaderValue = (int) (((double) headerShadow / 100) * 255);
-                Settings.System.putInt(resolver,
-                        Settings.System.STATUS_BAR_CUSTOM_HEADER_SHADOW, realHeaderValue);
+                mShadowWriter.putInt(Settings.System.STATUS_BAR_CUSTOM_HEADER_SHADOW,
+                        realHeaderValue);
                 return true;
 
             case CUSTOM_HEADER_PROVIDER:
@@ -157,7 +179,8 @@ public class QSHeader extends SettingsPreferenceFragment implements
                         Settings.System.STATUS_BAR_CUSTOM_HEADER_PROVIDER, value);
                 int valueIndex = mHeaderProvider.findIndexOfValue(value);
                 mHeaderProvider.setSummary(mHeaderProvider.getEntries()[valueIndex]);
-                mDaylightHeaderPack.setEnabled(value.equals(mDaylightHeaderProvider));
+                mHeaderProvider.setValue(value);
+                updateHeaderPackEnabled();
                 mHeaderBrowse.setEnabled(!value.equals(mFileHeaderProvider));
                 mHeaderBrowse.setTitle(valueIndex == 0 ? R.string.custom_header_browse_title : R.string.custom_header_pick_title);
                 mHeaderBrowse.setSummary(valueIndex == 0 ? R.string.custom_header_browse_summary_new : R.string.custom_header_pick_summary);
@@ -192,38 +215,10 @@ public class QSHeader extends SettingsPreferenceFragment implements
         return pm.resolveActivity(browse, 0) != null;
     }
 
-    private void getAvailableHeaderPacks(List<String> entries, List<String> values) {
-        Map<String, String> headerMap = new HashMap<String, String>();
-        Intent i = new Intent();
-        PackageManager packageManager = getActivity().getPackageManager();
-        i.setAction("org.omnirom.DaylightHeaderPack");
-        for (ResolveInfo r : packageManager.queryIntentActivities(i, 0)) {
-            String packageName = r.activityInfo.packageName;
-            String label = r.activityInfo.loadLabel(getActivity().getPackageManager()).toString();
-            if (label == null) {
-                label = r.activityInfo.packageName;
-            }
-            headerMap.put(label, packageName);
-        }
-        i.setAction("org.omnirom.DaylightHeaderPack1");
-        for (ResolveInfo r : packageManager.queryIntentActivities(i, 0)) {
-            String packageName = r.activityInfo.packageName;
-            String label = r.activityInfo.loadLabel(getActivity().getPackageManager()).toString();
-            if (r.activityInfo.name.endsWith(".theme")) {
-                continue;
-            }
-            if (label == null) {
-                label = packageName;
-            }
-            headerMap.put(label, packageName  + "/" + r.activityInfo.name);
-        }
-        List<String> labelList = new ArrayList<String>();
-        labelList.addAll(headerMap.keySet());
-        Collections.sort(labelList);
-        for (String label : labelList) {
-            entries.add(label);
-            values.add(headerMap.get(label));
-        }
+    @Override
+    public void onPause() {
+        super.onPause();
+        mShadowWriter.flush();
     }
 
     @Override
@@ -238,10 +233,33 @@ public class QSHeader extends SettingsPreferenceFragment implements
                 return;
             }
             final Uri imageUri = result.getData();
-            Settings.System.putString(getContentResolver(), Settings.System.STATUS_BAR_FILE_HEADER_IMAGE, imageUri.toString());
+            final ContentResolver resolver = getContentResolver();
+            final Context context = getContext().getApplicationContext();
+            HeaderImageProcessor.process(context, imageUri, optimizedUri -> {
+                // Fall back to the picked image if it couldn't be optimized
+                final Uri headerUri = optimizedUri != null ? optimizedUri : imageUri;
+                Settings.System.putString(resolver,
+                        Settings.System.STATUS_BAR_FILE_HEADER_IMAGE, headerUri.toString());
+                // Only once nothing points at them anymore
+                HeaderImageProcessor.deleteOlderCopies(context, optimizedUri);
+                updateFileHeaderPreview(headerUri.toString());
+            });
         }
     }
 
+    private void updateFileHeaderPreview(String imageUri) {
+        if (TextUtils.isEmpty(imageUri) || getActivity() == null) {
+            return;
+        }
+        final int size = getResources().getDimensionPixelSize(android.R.dimen.app_icon_size);
+        ImageThumbnailLoader.getInstance(getContext()).load(Uri.parse(imageUri), size, null,
+                (uri, thumbnail) -> {
+            if (thumbnail != null && getActivity() != null) {
+                mFileHeader.setIcon(new BitmapDrawable(getResources(), thumbnail));
+            }
+        });
+    }
+
     public static final SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
         new BaseSearchIndexProvider() {
             @Override
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2020 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.preferences;
+
+import android.content.Context;
+import android.database.DataSetObserver;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.android.settings.R;
+
+import com.derpquest.settings.utils.AppCatalog;
+import com.derpquest.settings.utils.AppCatalog.AppItem;
+import com.derpquest.settings.utils.AppCatalog.Snapshot;
+import com.derpquest.settings.utils.AppInfoCache;
+import com.derpquest.settings.utils.AppInfoCache.AppEntry;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * App picker adapter bound to the shared {@link AppCatalog}. It only listens for
+ * catalog updates while a list view is attached to it.
+ */
+public class AppCatalogAdapter extends BaseAdapter implements AppCatalog.Listener {
+
+    private final LayoutInflater mInflater;
+    private final AppCatalog mCatalog;
+    private final AppInfoCache mAppInfoCache;
+    private final boolean mLaunchableOnly;
+    private final boolean mShowSystemApps;
+
+    private List<AppItem> mItems = Collections.emptyList();
+    private int mObserverCount;
+
+    public AppCatalogAdapter(Context context) {
+        this(context, false, true);
+    }
+
+    public AppCatalogAdapter(Context context, boolean launchableOnly, boolean showSystemApps) {
+        mInflater = LayoutInflater.from(context);
+        mCatalog = AppCatalog.getInstance(context);
+        mAppInfoCache = AppInfoCache.getInstance(context);
+        mLaunchableOnly = launchableOnly;
+        mShowSystemApps = showSystemApps;
+
+        Snapshot snapshot = mCatalog.getSnapshot();
+        if (snapshot != null) {
+            mItems = snapshot.filter(mLaunchableOnly, mShowSystemApps);
+        }
+    }
+
+    @Override
+    public void onCatalogChanged(Snapshot snapshot) {
+        mItems = snapshot.filter(mLaunchableOnly, mShowSystemApps);
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        super.registerDataSetObserver(observer);
+        if (mObserverCount++ == 0) {
+            mCatalog.addListener(this);
+            // Catch up with anything published while we weren't listening
+            Snapshot snapshot = mCatalog.getSnapshot();
+            if (snapshot != null) {
+                onCatalogChanged(snapshot);
+            }
+        }
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        super.unregisterDataSetObserver(observer);
+        if (--mObserverCount == 0) {
+            mCatalog.removeListener(this);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public AppItem getItem(int position) {
+        return mItems.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mItems.get(position).packageName.hashCode();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        ViewHolder holder;
+        if (convertView != null) {
+            holder = (ViewHolder) convertView.getTag();
+        } else {
+            convertView = mInflater.inflate(R.layout.app_select_item, parent, false);
+            holder = new ViewHolder();
+            holder.title = (TextView) convertView.findViewById(R.id.app_name);
+            holder.icon = (ImageView) convertView.findViewById(R.id.app_icon);
+            convertView.findViewById(android.R.id.checkbox).setVisibility(View.GONE);
+            convertView.setTag(holder);
+        }
+
+        final AppItem item = getItem(position);
+        holder.packageName = item.packageName;
+        holder.title.setText(item.label);
+
+        AppEntry entry = mAppInfoCache.peek(item.packageName);
+        if (entry != null) {
+            holder.icon.setImageDrawable(entry.newIcon());
+        } else {
+            holder.icon.setImageResource(android.R.drawable.sym_def_app_icon);
+            final ViewHolder boundHolder = holder;
+            mAppInfoCache.load(item.packageName, (pkg, loaded) -> {
+                // The row may have been recycled for another package meanwhile
+                if (loaded != null && pkg.equals(boundHolder.packageName)) {
+                    boundHolder.icon.setImageDrawable(loaded.newIcon());
+                }
+            });
+        }
+        return convertView;
+    }
+
+    private static class ViewHolder {
+        String packageName;
+        TextView title;
+        ImageView icon;
+    }
+}
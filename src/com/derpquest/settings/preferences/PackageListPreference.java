@@ -20,11 +20,12 @@ import android.app.Dialog;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.TypedArray;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
-import android.os.UserHandle;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
@@ -37,45 +38,56 @@ import androidx.preference.PreferenceCategory;
 
 import com.android.settings.R;
 
-import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-import com.derp.support.preference.PackageListAdapter;
-import com.derp.support.preference.PackageListAdapter.PackageItem;
+import com.derpquest.settings.utils.AppCatalog.AppItem;
+import com.derpquest.settings.utils.AppInfoCache;
+import com.derpquest.settings.utils.AppInfoCache.AppEntry;
+import com.derpquest.settings.utils.GameSuggestions;
+import com.derpquest.settings.utils.GameSuggestions.Suggestion;
+import com.derpquest.settings.utils.PackageSet;
+import com.derpquest.settings.utils.SettingsTransaction;
 
 public class PackageListPreference extends PreferenceCategory implements
-        Preference.OnPreferenceClickListener {
+        Preference.OnPreferenceClickListener, GameSuggestions.Listener {
 
     private Context mContext;
     private String mRemovedListKey;
 
-    private PackageListAdapter mPackageAdapter;
-    private PackageManager mPackageManager;
+    private AppCatalogAdapter mPackageAdapter;
+    private AppInfoCache mAppInfoCache;
 
     private Preference mAddPackagePref;
+    private Preference mSuggestPref;
+    private GameSuggestions mGameSuggestions;
+    private final List<Suggestion> mSuggestions = new ArrayList<>();
 
     private ContentResolver mContentResolver;
 
-    private ArrayList<String> mGamingPackages = new ArrayList<>();
-    private ArrayList<String> mRemovedPackages = new ArrayList<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final PackageSet mGamingPackages = new PackageSet();
+    private final PackageSet mRemovedPackages = new PackageSet();
+    private boolean mCompactionPending;
 
     public PackageListPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
 
         TypedArray customAttrs = context.obtainStyledAttributes(attrs, R.styleable.PackageListPreferenceView, 0, 0);
         boolean showSystemApps = customAttrs.getBoolean(R.styleable.PackageListPreferenceView_derp_showSystemApps, true);
+        boolean suggestGames = customAttrs.getBoolean(R.styleable.PackageListPreferenceView_derp_suggestGames, false);
 
         mContext = context;
-        mPackageManager = mContext.getPackageManager();
-        mPackageAdapter = new PackageListAdapter(mContext, app -> {
-            // skip any packages that didn't get listed on launcher
-            if (mPackageManager.getLaunchIntentForPackage(app.packageName) == null)
-                return false;
-
-            return showSystemApps || (app.flags & ApplicationInfo.FLAG_SYSTEM) == 0;
-        });
+        // skip any packages that didn't get listed on launcher
+        mPackageAdapter = new AppCatalogAdapter(mContext, true, showSystemApps);
+        mAppInfoCache = AppInfoCache.getInstance(mContext);
         mContentResolver = mContext.getApplicationContext().getContentResolver();
         mAddPackagePref = makeAddPref();
+        if (suggestGames) {
+            mGameSuggestions = GameSuggestions.getInstance(mContext);
+            mSuggestPref = makeSuggestPref();
+        }
 
         this.setOrderingAsAdded(false);
         customAttrs.recycle();
@@ -83,6 +95,8 @@ public class PackageListPreference extends PreferenceCategory implements
 
     private Preference makeAddPref() {
         Preference pref = new Preference(mContext);
+        // Ordered ahead of the app rows, which sort by title
+        pref.setOrder(0);
         pref.setTitle(R.string.add_package_to_title);
         pref.setIcon(R.drawable.ic_add);
         pref.setPersistent(false);
@@ -90,6 +104,16 @@ public class PackageListPreference extends PreferenceCategory implements
         return pref;
     }
 
+    private Preference makeSuggestPref() {
+        Preference pref = new Preference(mContext);
+        pref.setOrder(1);
+        pref.setTitle(R.string.gaming_mode_suggested_title);
+        pref.setIcon(R.drawable.ic_add);
+        pref.setPersistent(false);
+        pref.setOnPreferenceClickListener(this);
+        return pref;
+    }
+
     public void setRemovedListKey(String key) {
         mRemovedListKey = key;
         if (isAttached()) {
@@ -97,31 +121,36 @@ public class PackageListPreference extends PreferenceCategory implements
         }
     }
 
-    private ApplicationInfo getAppInfo(String packageName) {
-        try {
-            return mPackageManager.getApplicationInfo(packageName, PackageManager.GET_META_DATA);
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
     private void parsePackageList() {
-        mGamingPackages.clear();
-        mRemovedPackages.clear();
+        mGamingPackages.parse(Settings.System.getString(mContentResolver, getKey()));
+        mRemovedPackages.parse(TextUtils.isEmpty(mRemovedListKey) ? null
+                : Settings.System.getString(mContentResolver, mRemovedListKey));
+    }
 
-        String packageListData = Settings.System.getString(mContentResolver, getKey());
-        if (!TextUtils.isEmpty(packageListData)) {
-            String[] packageListArray = packageListData.split(";");
-            mGamingPackages.addAll(Arrays.asList(packageListArray));
-        }
-        if (!TextUtils.isEmpty(mRemovedListKey)) {
-            String removedPackageListData = Settings.System.getString(mContentResolver, mRemovedListKey);
-            if (!TextUtils.isEmpty(removedPackageListData)) {
-                String[] packageListArray = removedPackageListData.split(";");
-                mRemovedPackages.addAll(Arrays.asList(packageListArray));
-            }
+    /**
+     * The removed list only keeps apps from being added back automatically, so
+     * entries for apps that are gone are dropped instead of piling up.
+     */
+    private void compactRemovedList() {
+        if (mCompactionPending || mRemovedPackages.isEmpty()) {
+            return;
         }
+        mCompactionPending = true;
+        final PackageSet snapshot = new PackageSet(mRemovedPackages.encode());
+        final PackageManager pm = mContext.getPackageManager();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            final List<String> dropped = snapshot.retainInstalled(pm);
+            mHandler.post(() -> {
+                mCompactionPending = false;
+                boolean changed = false;
+                for (String pkg : dropped) {
+                    changed |= mRemovedPackages.remove(pkg);
+                }
+                if (changed) {
+                    savePackagesList();
+                }
+            });
+        });
     }
 
     private void refreshCustomApplicationPrefs() {
@@ -131,52 +160,168 @@ public class PackageListPreference extends PreferenceCategory implements
         for (String pkg : mGamingPackages) {
             addPackageToPref(pkg);
         }
+        updateSuggestPref();
+        compactRemovedList();
+    }
+
+    @Override
+    public void onSuggestionsChanged(List<Suggestion> suggestions) {
+        updateSuggestPref();
+    }
+
+    /**
+     * Offers the suggested games that are neither listed nor removed by the user.
+     */
+    private void updateSuggestPref() {
+        if (mSuggestPref == null) {
+            return;
+        }
+        mSuggestions.clear();
+        final List<Suggestion> suggestions = mGameSuggestions.getSuggestions();
+        if (suggestions != null) {
+            for (Suggestion suggestion : suggestions) {
+                if (!mGamingPackages.contains(suggestion.packageName)
+                        && !mRemovedPackages.contains(suggestion.packageName)) {
+                    mSuggestions.add(suggestion);
+                }
+            }
+        }
+        if (mSuggestions.isEmpty()) {
+            removePreference(mSuggestPref);
+            return;
+        }
+        mSuggestPref.setSummary(mContext.getResources().getQuantityString(
+                R.plurals.gaming_mode_suggested_summary, mSuggestions.size(),
+                mSuggestions.size()));
+        if (!hasPreference(mSuggestPref)) {
+            addPreference(mSuggestPref);
+        }
+    }
+
+    private boolean hasPreference(Preference pref) {
+        for (int i = 0; i < getPreferenceCount(); i++) {
+            if (getPreference(i) == pref) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void showSuggestionsDialog() {
+        final int count = mSuggestions.size();
+        final CharSequence[] labels = new CharSequence[count];
+        final boolean[] checked = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = mSuggestions.get(i).label;
+            checked[i] = true;
+        }
+        final List<Suggestion> shown = new ArrayList<>(mSuggestions);
+        new AlertDialog.Builder(mContext)
+                .setTitle(R.string.gaming_mode_suggested_title)
+                .setMultiChoiceItems(labels, checked, (dialog, which, isChecked) -> {
+                    checked[which] = isChecked;
+                })
+                .setPositiveButton(R.string.gaming_mode_suggested_add, (dialog, which) -> {
+                    List<String> packages = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        if (checked[i]) {
+                            packages.add(shown.get(i).packageName);
+                        }
+                    }
+                    addPackagesToList(packages);
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
     }
 
     private void savePackagesList() {
-        String packageListData = String.join(";", mGamingPackages);
-        Settings.System.putString(mContentResolver, getKey(), packageListData);
+        SettingsTransaction transaction = SettingsTransaction.system(mContentResolver)
+                .putString(getKey(), mGamingPackages.encode());
         if (!TextUtils.isEmpty(mRemovedListKey)) {
-            String removedPackageListData = String.join(";", mRemovedPackages);
-            Settings.System.putString(mContentResolver, mRemovedListKey, removedPackageListData);
+            transaction.putString(mRemovedListKey, mRemovedPackages.encode());
         }
+        transaction.commit();
     }
 
     private void addPackageToPref(String packageName) {
         Preference pref = new Preference(mContext);
-        ApplicationInfo appInfo = getAppInfo(packageName);
-        if (appInfo == null) return;
         pref.setKey(packageName);
-        pref.setTitle(appInfo.loadLabel(mPackageManager));
-        pref.setIcon(appInfo.loadIcon(mPackageManager));
         pref.setPersistent(false);
         pref.setOnPreferenceClickListener(this);
+
+        AppEntry entry = mAppInfoCache.peek(packageName);
+        if (entry != null) {
+            bindAppEntry(pref, entry);
+            addPreference(pref);
+            return;
+        }
+
+        // Show a placeholder right away, the label and icon follow once loaded
+        pref.setTitle(packageName);
+        pref.setIcon(android.R.drawable.sym_def_app_icon);
         addPreference(pref);
+        mAppInfoCache.load(packageName, (pkg, loaded) -> {
+            if (findPreference(pkg) != pref) return;
+            if (loaded == null) {
+                // Package is no longer installed
+                removePreference(pref);
+            } else {
+                bindAppEntry(pref, loaded);
+            }
+        });
+    }
+
+    private void bindAppEntry(Preference pref, AppEntry entry) {
+        pref.setTitle(entry.label);
+        pref.setIcon(entry.newIcon());
     }
 
     private void addPackageToList(String packageName) {
-        if (!mGamingPackages.contains(packageName)) {
-            mGamingPackages.add(packageName);
-            addPackageToPref(packageName);
+        addPackagesToList(Collections.singletonList(packageName));
+    }
+
+    private void addPackagesToList(List<String> packageNames) {
+        boolean changed = false;
+        for (String packageName : packageNames) {
+            if (mGamingPackages.add(packageName)) {
+                addPackageToPref(packageName);
+                changed = true;
+            }
+            changed |= mRemovedPackages.remove(packageName);
+        }
+        if (changed) {
+            updateSuggestPref();
+            savePackagesList();
         }
-        mRemovedPackages.remove(packageName);
-        savePackagesList();
     }
 
     private void removePackageFromList(String packageName) {
-        if (!mRemovedPackages.contains(packageName)) {
-            mRemovedPackages.add(packageName);
+        boolean changed = mGamingPackages.remove(packageName);
+        if (!TextUtils.isEmpty(mRemovedListKey)) {
+            changed |= mRemovedPackages.add(packageName);
+        }
+        if (changed) {
+            savePackagesList();
         }
-        mGamingPackages.remove(packageName);
-        savePackagesList();
     }
 
     @Override
     public void onAttached() {
         super.onAttached();
+        if (mGameSuggestions != null) {
+            mGameSuggestions.addListener(this);
+        }
         refreshCustomApplicationPrefs();
     }
 
+    @Override
+    public void onDetached() {
+        if (mGameSuggestions != null) {
+            mGameSuggestions.removeListener(this);
+        }
+        super.onDetached();
+    }
+
     @Override
     public boolean onPreferenceClick(Preference preference) {
         AlertDialog.Builder builder = new AlertDialog.Builder(mContext);
@@ -190,12 +335,14 @@ public class PackageListPreference extends PreferenceCategory implements
             appsList.setOnItemClickListener(new OnItemClickListener() {
                 @Override
                 public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                    PackageItem info = (PackageItem) parent.getItemAtPosition(position);
+                    AppItem info = (AppItem) parent.getItemAtPosition(position);
                     addPackageToList(info.packageName);
                     dialog.cancel();
                 }
             });
             dialog.show();
+        } else if (preference == mSuggestPref) {
+            showSuggestionsDialog();
         } else if (preference == findPreference(preference.getKey())) {
             builder.setTitle(R.string.dialog_delete_title)
                 .setMessage(R.string.dialog_delete_message)
@@ -205,6 +352,7 @@ public class PackageListPreference extends PreferenceCategory implements
                     public void onClick(DialogInterface dialog, int which) {
                         removePackageFromList(preference.getKey());
                         removePreference(preference);
+                        updateSuggestPref();
                     }
                 })
                 .setNegativeButton(android.R.string.cancel, null).show();
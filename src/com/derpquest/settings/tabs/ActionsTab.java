@@ -16,6 +16,7 @@
 
 package com.derpquest.settings.tabs;
 
+import android.content.res.Resources;
 import android.os.Bundle;
 import android.preference.Preference.OnPreferenceChangeListener;
 
@@ -24,7 +25,6 @@ import androidx.preference.Preference;
 import com.android.internal.logging.nano.MetricsProto;
 import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
-import com.android.settings.widget.CardPreference;
 
 public class ActionsTab extends SettingsPreferenceFragment implements
         Preference.OnPreferenceChangeListener {
@@ -35,50 +35,26 @@ public class ActionsTab extends SettingsPreferenceFragment implements
     private static final String VOLUME_ROCKER_CATEGORY = "volume_rocker_category";
     private static final String HWKEY_CATEGORY = "hw_keys_category";
 
-    private CardPreference mPowerButton;
-    private CardPreference mNavigation;
-    private CardPreference mGestures;
-    private CardPreference mVolumeRocker;
-    private CardPreference mHwKeys;
-
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        addPreferencesFromResource(R.xml.tab_actions);
-
-        CardPreference mPowerButton = findPreference("powerbutton_category");
-        if (!getResources().getBoolean(R.bool.powerbutton_category_isVisible)) {
-            getPreferenceScreen().removePreference(mPowerButton);
-        } else {
-            mPowerButton = (CardPreference) findPreference(POWERBUTTON_CATEGORY);
-        }
-
-        CardPreference mNavigation = findPreference("navigationbar_settings");
-        if (!getResources().getBoolean(R.bool.navigationbar_category_isVisible)) {
-            getPreferenceScreen().removePreference(mNavigation);
-        } else {
-            mNavigation = (CardPreference) findPreference(NAVIGATION_CATEGORY);
-        }
-
-        CardPreference mGestures = findPreference("gesture_settings");
-        if (!getResources().getBoolean(R.bool.gestures_category_isVisible)) {
-            getPreferenceScreen().removePreference(mGestures);
-        } else {
-            mGestures = (CardPreference) findPreference(GESTURE_OPTIONS_CATEGORY);
-        }
-
-        CardPreference mVolumeRocker = findPreference("volume_rocker_category");
-        if (!getResources().getBoolean(R.bool.volumerocker_category_isVisible)) {
-            getPreferenceScreen().removePreference(mVolumeRocker);
-        } else {
-            mVolumeRocker = (CardPreference) findPreference(VOLUME_ROCKER_CATEGORY);
-        }
+        TabCardModel.bind(this, R.xml.tab_actions, ActionsTab::isCardVisible);
+    }
 
-        CardPreference mHwKeys = findPreference("hw_keys_category");
-        if (!getResources().getBoolean(R.bool.hwkeys_category_isVisible)) {
-            getPreferenceScreen().removePreference(mHwKeys);
-        } else {
-            mHwKeys = (CardPreference) findPreference(HWKEY_CATEGORY);
+    private static boolean isCardVisible(Resources res, String key) {
+        switch (key) {
+            case POWERBUTTON_CATEGORY:
+                return res.getBoolean(R.bool.powerbutton_category_isVisible);
+            case NAVIGATION_CATEGORY:
+                return res.getBoolean(R.bool.navigationbar_category_isVisible);
+            case GESTURE_OPTIONS_CATEGORY:
+                return res.getBoolean(R.bool.gestures_category_isVisible);
+            case VOLUME_ROCKER_CATEGORY:
+                return res.getBoolean(R.bool.volumerocker_category_isVisible);
+            case HWKEY_CATEGORY:
+                return res.getBoolean(R.bool.hwkeys_category_isVisible);
+            default:
+                return true;
         }
     }
 
@@ -16,6 +16,7 @@
 
 package com.derpquest.settings.tabs;
 
+import android.content.res.Resources;
 import android.os.Bundle;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -36,45 +37,33 @@ public class InterfaceTab extends SettingsPreferenceFragment implements
     private static final String THEMER_CATEGORY = "themer_category";
     private static final String PULSE_CATEGORY = "pulse_category";
 
-    private CardPreference mQuickSettings;
-    private CardPreference mHeadsup;
-    private CardPreference mThemer;
-    private CardPreference mPulse;
-
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        addPreferencesFromResource(R.xml.tab_interface);
+        TabCardModel.bind(this, R.xml.tab_interface, InterfaceTab::isCardVisible);
 
-        CardPreference mQuickSettings = findPreference("quick_settings_category");
-        if (!getResources().getBoolean(R.bool.quick_settings_category_isVisible)) {
-            getPreferenceScreen().removePreference(mQuickSettings);
-        } else {
-            mQuickSettings = (CardPreference) findPreference(QUICK_SETTINGS_CATEGORY);
-        }
-
-        CardPreference mHeadsup = findPreference("headsup_category");
-        if (!getResources().getBoolean(R.bool.headsup_category_isVisible)) {
-            getPreferenceScreen().removePreference(mHeadsup);
-        } else {
-            mHeadsup = (CardPreference) findPreference(HEADSUP_CATEGORY);
-        }
-
-        CardPreference mThemer = findPreference("themer_category");
+        // Themer also depends on an installed package, so it is checked every time
+        CardPreference mThemer = findPreference(THEMER_CATEGORY);
+        boolean hasCustomThemes = hasCustomThemesAvailable();
         // The following 2 checks need to pass in order for Themer to show
-        if ((!hasCustomThemesAvailable()) &&
+        if (!hasCustomThemes &&
             (!getResources().getBoolean(R.bool.themer_category_isVisible))) {
             getPreferenceScreen().removePreference(mThemer);
         } else {
-            mThemer = (CardPreference) findPreference(THEMER_CATEGORY);
-            mThemer.setEnabled(hasCustomThemesAvailable());
+            mThemer.setEnabled(hasCustomThemes);
         }
+    }
 
-        CardPreference mPulse = findPreference("pulse_category");
-        if (!getResources().getBoolean(R.bool.pulse_category_isVisible)) {
-            getPreferenceScreen().removePreference(mPulse);
-        } else {
-            mPulse = (CardPreference) findPreference(PULSE_CATEGORY);
+    private static boolean isCardVisible(Resources res, String key) {
+        switch (key) {
+            case QUICK_SETTINGS_CATEGORY:
+                return res.getBoolean(R.bool.quick_settings_category_isVisible);
+            case HEADSUP_CATEGORY:
+                return res.getBoolean(R.bool.headsup_category_isVisible);
+            case PULSE_CATEGORY:
+                return res.getBoolean(R.bool.pulse_category_isVisible);
+            default:
+                return true;
         }
     }
 
@@ -16,6 +16,7 @@
 
 package com.derpquest.settings.tabs;
 
+import android.content.res.Resources;
 import android.os.Bundle;
 import android.preference.Preference.OnPreferenceChangeListener;
 
@@ -24,7 +25,6 @@ import androidx.preference.Preference;
 import com.android.internal.logging.nano.MetricsProto;
 import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
-import com.android.settings.widget.CardPreference;
 
 public class LockScreenTab extends SettingsPreferenceFragment implements
         Preference.OnPreferenceChangeListener {
@@ -34,52 +34,30 @@ public class LockScreenTab extends SettingsPreferenceFragment implements
 //    private static final String LOCKSCREEN_TUNER_CATEGORY = "lockscreen_tuner_category";
     private static final String LOCKSCREEN_WEATHER_CATEGORY = "lockscreen_weather";
     private static final String LOCKSCREEN_FOD_CATEGORY = "lockscreen_fod_category";
-        
-    private CardPreference mLockscreenFod;
-    private CardPreference mLockscreenAosp;
-    private CardPreference mLockscreenGeneral;
-//    private CardPreference mLockscreenTuner;
-    private CardPreference mLockscreenWeather;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        addPreferencesFromResource(R.xml.tab_lock_screen);
-
-        CardPreference mLockscreenAosp = findPreference("lockscreen_aosp_category");
-        if (!getResources().getBoolean(R.bool.lockscreen_aosp_category_isVisible)) {
-            getPreferenceScreen().removePreference(mLockscreenAosp);
-        } else {
-            mLockscreenAosp = (CardPreference) findPreference(LOCKSCREEN_AOSP_CATEGORY);
-        }
+        TabCardModel.bind(this, R.xml.tab_lock_screen, LockScreenTab::isCardVisible);
+    }
 
-        CardPreference mLockscreenGeneral = findPreference("lockscreen_general_category");
-        if (!getResources().getBoolean(R.bool.lockscreen_general_category_isVisible)) {
-            getPreferenceScreen().removePreference(mLockscreenGeneral);
-        } else {
-            mLockscreenGeneral = (CardPreference) findPreference(LOCKSCREEN_GENERAL_CATEGORY);
-        }
+    private static boolean isCardVisible(Resources res, String key) {
+        switch (key) {
+            case LOCKSCREEN_AOSP_CATEGORY:
+                return res.getBoolean(R.bool.lockscreen_aosp_category_isVisible);
+            case LOCKSCREEN_GENERAL_CATEGORY:
+                return res.getBoolean(R.bool.lockscreen_general_category_isVisible);
 /** Uncomment once Tuner is added
-        CardPreference mLockscreenTuner = findPreference("lockscreen_tuner_category");
-        if (!getResources().getBoolean(R.bool.lockscreen_tuner_category_isVisible)) {
-            getPreferenceScreen().removePreference(mLockscreenTuner);
-        } else {
-            mLockscreenTuner = (CardPreference) findPreference(LOCKSCREEN_TUNER_CATEGORY);
-        }
+            case LOCKSCREEN_TUNER_CATEGORY:
+                return res.getBoolean(R.bool.lockscreen_tuner_category_isVisible);
 */
-        CardPreference mLockscreenWeather = findPreference("lockscreen_weather");
-        if (!getResources().getBoolean(R.bool.lockscreen_weather_category_isVisible)) {
-            getPreferenceScreen().removePreference(mLockscreenWeather);
-        } else {
-            mLockscreenWeather = (CardPreference) findPreference(LOCKSCREEN_WEATHER_CATEGORY);
-        }    
-
-        CardPreference mLockscreenFod = findPreference("lockscreen_fod_category");
-        if (!getResources().getBoolean(com.android.internal.R.bool.config_needCustomFODView)) {
-                    getPreferenceScreen().removePreference(mLockscreenFod);
-        } else {
-            mLockscreenFod = (CardPreference) findPreference(LOCKSCREEN_FOD_CATEGORY);
-        }            
+            case LOCKSCREEN_WEATHER_CATEGORY:
+                return res.getBoolean(R.bool.lockscreen_weather_category_isVisible);
+            case LOCKSCREEN_FOD_CATEGORY:
+                return res.getBoolean(com.android.internal.R.bool.config_needCustomFODView);
+            default:
+                return true;
+        }
     }
 
     @Override
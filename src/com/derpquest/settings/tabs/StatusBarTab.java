@@ -17,6 +17,7 @@
 package com.derpquest.settings.tabs;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.os.Bundle;
 import android.preference.Preference.OnPreferenceChangeListener;
 import android.text.TextUtils;
@@ -27,7 +28,6 @@ import com.android.internal.logging.nano.MetricsProto;
 import com.android.internal.util.derp.derpUtils;
 import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
-import com.android.settings.widget.CardPreference;
 
 public class StatusBarTab extends SettingsPreferenceFragment implements
         Preference.OnPreferenceChangeListener {
@@ -38,51 +38,27 @@ public class StatusBarTab extends SettingsPreferenceFragment implements
     private static final String TRAFFIC_CATEGORY = "traffic_category";
     private static final String STATUS_BAR_ITEMS_CATEGORY = "status_bar";
 
-    private CardPreference mBattery;
-    private CardPreference mClockOptions;
-    private CardPreference mCutoutPref;
-    private CardPreference mTraffic;
-    private CardPreference mStatusBarItems;
-
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        addPreferencesFromResource(R.xml.tab_status_bar);
-
-        CardPreference mBattery = findPreference("battery_options_category");
-        if (!getResources().getBoolean(R.bool.battery_category_isVisible)) {
-            getPreferenceScreen().removePreference(mBattery);
-        } else {
-            mBattery = (CardPreference) findPreference(BATTERY_CATEGORY);
-        }
-
-        CardPreference mClockOptions = findPreference("clock_options_category");
-        if (!getResources().getBoolean(R.bool.clock_category_isVisible)) {
-            getPreferenceScreen().removePreference(mClockOptions);
-        } else {
-            mClockOptions = (CardPreference) findPreference(CLOCK_OPTIONS_CATEGORY);
-        }
-
-        CardPreference mCutoutPref = findPreference("cutout_settings");
-        String hasDisplayCutout = getResources().getString(com.android.internal.R.string.config_mainBuiltInDisplayCutout);
-        if (TextUtils.isEmpty(hasDisplayCutout)) {
-            getPreferenceScreen().removePreference(mCutoutPref);
-        } else {
-            mCutoutPref = (CardPreference) findPreference(PREF_KEY_CUTOUT);
-        }
-
-        CardPreference mTraffic = findPreference("traffic_category");
-        if (!getResources().getBoolean(R.bool.traffic_category_isVisible)) {
-            getPreferenceScreen().removePreference(mTraffic);
-        } else {
-            mTraffic = (CardPreference) findPreference(TRAFFIC_CATEGORY);
-        }
+        TabCardModel.bind(this, R.xml.tab_status_bar, StatusBarTab::isCardVisible);
+    }
 
-        CardPreference mStatusBarItems = findPreference("status_bar");
-        if (!getResources().getBoolean(R.bool.statusbar_icon_blacklist_category_isVisible)) {
-            getPreferenceScreen().removePreference(mStatusBarItems);
-        } else {
-            mStatusBarItems = (CardPreference) findPreference(STATUS_BAR_ITEMS_CATEGORY);
+    private static boolean isCardVisible(Resources res, String key) {
+        switch (key) {
+            case BATTERY_CATEGORY:
+                return res.getBoolean(R.bool.battery_category_isVisible);
+            case CLOCK_OPTIONS_CATEGORY:
+                return res.getBoolean(R.bool.clock_category_isVisible);
+            case PREF_KEY_CUTOUT:
+                return !TextUtils.isEmpty(res.getString(
+                        com.android.internal.R.string.config_mainBuiltInDisplayCutout));
+            case TRAFFIC_CATEGORY:
+                return res.getBoolean(R.bool.traffic_category_isVisible);
+            case STATUS_BAR_ITEMS_CATEGORY:
+                return res.getBoolean(R.bool.statusbar_icon_blacklist_category_isVisible);
+            default:
+                return true;
         }
     }
 
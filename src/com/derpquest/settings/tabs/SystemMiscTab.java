@@ -16,6 +16,7 @@
 
 package com.derpquest.settings.tabs;
 
+import android.content.res.Resources;
 import android.os.Bundle;
 import android.preference.Preference.OnPreferenceChangeListener;
 
@@ -24,7 +25,6 @@ import androidx.preference.Preference;
 import com.android.internal.logging.nano.MetricsProto;
 import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
-import com.android.settings.widget.CardPreference;
 
 public class SystemMiscTab extends SettingsPreferenceFragment implements
         Preference.OnPreferenceChangeListener {
@@ -35,56 +35,30 @@ public class SystemMiscTab extends SettingsPreferenceFragment implements
     private static final String CHANGELOG_CATEGORY = "changelog";
     private static final String LED_SETTINGS_CATEGORY = "led_settings";
 
-    private CardPreference mAnimations;
-    private CardPreference mGeneral;
-    private CardPreference mMiscellaneous;
-    private CardPreference mChangelog;
-    private CardPreference mLedSettings;
-
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        addPreferencesFromResource(R.xml.tab_system_misc);
-
-        CardPreference mAnimations = findPreference("animations_category");
-        if (!getResources().getBoolean(R.bool.animations_category_isVisible)) {
-            getPreferenceScreen().removePreference(mAnimations);
-        } else {
-            mAnimations = (CardPreference) findPreference(ANIMATIONS_CATEGORY);
-        }
-
-        CardPreference mGeneral = findPreference("general_notifications");
-        if (!getResources().getBoolean(R.bool.general_notifications_category_isVisible)) {
-            getPreferenceScreen().removePreference(mGeneral);
-        } else {
-            mGeneral = (CardPreference) findPreference(GENERAL_NOTIFICATIONS);
-        }
-
-        CardPreference mMiscellaneous = findPreference("miscellaneous_category");
-        if (!getResources().getBoolean(R.bool.miscellaneous_category_isVisible)) {
-            getPreferenceScreen().removePreference(mMiscellaneous);
-        } else {
-            mMiscellaneous = (CardPreference) findPreference(MISCELLANEOUS_CATEGORY);
-        }
-
-//        CardPreference mChangelog = findPreference("changelog");
-//        if (!getResources().getBoolean(R.bool.changelog_category_isVisible)) {
-//            getPreferenceScreen().removePreference(mChangelog);
-//        } else {
-//            mChangelog = (CardPreference) findPreference(CHANGELOG_CATEGORY);
-//        }
+        TabCardModel.bind(this, R.xml.tab_system_misc, SystemMiscTab::isCardVisible);
+    }
 
-        /**
-         * Only show LED category if device supports LED options for either
-         * battery OR notifications. Also needs boolean set "true" in device
-         */
-        CardPreference mLedSettings = findPreference("led_settings");
-        if (!getResources().getBoolean(R.bool.led_settings_category_isVisible)) {
-//            (!getResources().getBoolean(com.android.internal.R.bool.config_intrusiveNotificationLed)) ||
-//            (!getResources().getBoolean(com.android.internal.R.bool.config_intrusiveBatteryLed))) {
-            getPreferenceScreen().removePreference(mLedSettings);
-        } else {
-            mLedSettings = (CardPreference) findPreference(LED_SETTINGS_CATEGORY);
+    private static boolean isCardVisible(Resources res, String key) {
+        switch (key) {
+            case ANIMATIONS_CATEGORY:
+                return res.getBoolean(R.bool.animations_category_isVisible);
+            case GENERAL_NOTIFICATIONS:
+                return res.getBoolean(R.bool.general_notifications_category_isVisible);
+            case MISCELLANEOUS_CATEGORY:
+                return res.getBoolean(R.bool.miscellaneous_category_isVisible);
+//            case CHANGELOG_CATEGORY:
+//                return res.getBoolean(R.bool.changelog_category_isVisible);
+            /**
+             * Only show LED category if device supports LED options for either
+             * battery OR notifications. Also needs boolean set "true" in device
+             */
+            case LED_SETTINGS_CATEGORY:
+                return res.getBoolean(R.bool.led_settings_category_isVisible);
+            default:
+                return true;
         }
     }
 
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.tabs;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.util.ArrayMap;
+import android.util.AttributeSet;
+import android.util.Log;
+
+import androidx.preference.PreferenceFragmentCompat;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+
+import com.android.settings.widget.CardPreference;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Card list of a tab, parsed once per process and configuration and already
+ * filtered by the tab's visibility flags. The flags are fixed for a device build,
+ * so cards a device hides are never created, and recreated tabs build their cards
+ * straight from the model instead of going through the preference inflater.
+ */
+public final class TabCardModel {
+    private static final String TAG = "TabCardModel";
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    private static final String TAG_INTENT = "intent";
+
+    interface Visibility {
+        /**
+         * Returns whether the card with {@code key} is shown on this device. Must only
+         * depend on build-time configuration, the answer is cached.
+         */
+        boolean isVisible(Resources res, String key);
+    }
+
+    private static final class Card {
+        String key;
+        String fragment;
+        int icon;
+        int titleRes;
+        CharSequence title;
+        int summaryRes;
+        CharSequence summary;
+        Intent intent;
+    }
+
+    private static final Map<String, List<Card>> sCache = new ArrayMap<>();
+
+    private TabCardModel() {
+    }
+
+    /**
+     * Sets the visible cards of {@code xmlRes} as the fragment's preference screen.
+     */
+    static void bind(PreferenceFragmentCompat fragment, int xmlRes, Visibility visibility) {
+        final PreferenceManager manager = fragment.getPreferenceManager();
+        fragment.setPreferenceScreen(createScreen(manager,
+                getCards(manager.getContext().getResources(), xmlRes, visibility)));
+    }
+
+    /**
+     * Builds the screen of {@code xmlRes} from the model, or returns null if no tab
+     * has cached it for the current configuration yet.
+     */
+    public static PreferenceScreen createCachedScreen(PreferenceManager manager, int xmlRes) {
+        final List<Card> cards;
+        synchronized (TabCardModel.class) {
+            cards = sCache.get(getCacheKey(manager.getContext().getResources(), xmlRes));
+        }
+        return cards != null ? createScreen(manager, cards) : null;
+    }
+
+    private static PreferenceScreen createScreen(PreferenceManager manager, List<Card> cards) {
+        final Context context = manager.getContext();
+        final PreferenceScreen screen = manager.createPreferenceScreen(context);
+        for (Card card : cards) {
+            CardPreference pref = new CardPreference(context);
+            pref.setKey(card.key);
+            pref.setFragment(card.fragment);
+            pref.setIntent(card.intent != null ? new Intent(card.intent) : null);
+            if (card.icon != 0) {
+                pref.setIcon(card.icon);
+            }
+            if (card.titleRes != 0) {
+                pref.setTitle(card.titleRes);
+            } else {
+                pref.setTitle(card.title);
+            }
+            if (card.summaryRes != 0) {
+                pref.setSummary(card.summaryRes);
+            } else {
+                pref.setSummary(card.summary);
+            }
+            screen.addPreference(pref);
+        }
+        return screen;
+    }
+
+    /**
+     * Only the configuration fields resource qualifiers of the tabs can depend on.
+     */
+    private static String getCacheKey(Resources res, int xmlRes) {
+        final Configuration config = res.getConfiguration();
+        return xmlRes + ":" + config.orientation + ":" + config.smallestScreenWidthDp
+                + ":" + config.densityDpi + ":" + config.uiMode;
+    }
+
+    private static synchronized List<Card> getCards(Resources res, int xmlRes,
+            Visibility visibility) {
+        final String key = getCacheKey(res, xmlRes);
+        List<Card> cards = sCache.get(key);
+        if (cards == null) {
+            cards = new ArrayList<>();
+            for (Card card : parse(res, xmlRes)) {
+                if (card.key == null || visibility.isVisible(res, card.key)) {
+                    cards.add(card);
+                }
+            }
+            cards = Collections.unmodifiableList(cards);
+            sCache.put(key, cards);
+        }
+        return cards;
+    }
+
+    private static List<Card> parse(Resources res, int xmlRes) {
+        final List<Card> cards = new ArrayList<>();
+        try (XmlResourceParser parser = res.getXml(xmlRes)) {
+            Card card = null;
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                final AttributeSet attrs = parser;
+                if (TAG_INTENT.equals(parser.getName())) {
+                    if (card != null) {
+                        card.intent = parseIntent(attrs);
+                    }
+                } else if (parser.getName().endsWith(CardPreference.class.getSimpleName())) {
+                    card = new Card();
+                    card.key = attrs.getAttributeValue(ANDROID_NS, "key");
+                    card.fragment = attrs.getAttributeValue(ANDROID_NS, "fragment");
+                    card.icon = attrs.getAttributeResourceValue(ANDROID_NS, "icon", 0);
+                    card.titleRes = attrs.getAttributeResourceValue(ANDROID_NS, "title", 0);
+                    card.title = attrs.getAttributeValue(ANDROID_NS, "title");
+                    card.summaryRes = attrs.getAttributeResourceValue(ANDROID_NS, "summary", 0);
+                    card.summary = attrs.getAttributeValue(ANDROID_NS, "summary");
+                    cards.add(card);
+                }
+            }
+        } catch (XmlPullParserException | IOException e) {
+            Log.e(TAG, "Failed to parse tab cards", e);
+        }
+        return cards;
+    }
+
+    private static Intent parseIntent(AttributeSet attrs) {
+        Intent intent = new Intent(attrs.getAttributeValue(ANDROID_NS, "action"));
+        String targetPackage = attrs.getAttributeValue(ANDROID_NS, "targetPackage");
+        String targetClass = attrs.getAttributeValue(ANDROID_NS, "targetClass");
+        if (targetPackage != null && targetClass != null) {
+            intent.setClassName(targetPackage, targetClass);
+        }
+        return intent;
+    }
+}
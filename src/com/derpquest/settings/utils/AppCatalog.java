@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2020 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Process-wide catalog of installed applications backing the app picker dialogs.
+ * Packages are scanned once in parallel and published as immutable snapshots,
+ * package broadcasts then update the catalog one package at a time.
+ */
+public final class AppCatalog implements PackageChangeMonitor.Listener {
+    private static final String TAG = "AppCatalog";
+
+    private static final int SCAN_THREADS =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    public static final class AppItem {
+        public final String packageName;
+        public final CharSequence label;
+        public final boolean launchable;
+        public final boolean system;
+        /** {@link ApplicationInfo#category} as declared by the app. */
+        public final int category;
+        /** Whether the app declares itself a game through its category. */
+        public final boolean game;
+
+        AppItem(String packageName, CharSequence label, boolean launchable, boolean system,
+                int category, boolean game) {
+            this.packageName = packageName;
+            this.label = label;
+            this.launchable = launchable;
+            this.system = system;
+            this.category = category;
+            this.game = game;
+        }
+    }
+
+    public static final class Snapshot {
+        private final List<AppItem> mItems;
+
+        Snapshot(List<AppItem> items) {
+            mItems = Collections.unmodifiableList(items);
+        }
+
+        public List<AppItem> getItems() {
+            return mItems;
+        }
+
+        /**
+         * Returns the items matching the given picker constraints, in label order.
+         */
+        public List<AppItem> filter(boolean launchableOnly, boolean showSystemApps) {
+            if (!launchableOnly && showSystemApps) {
+                return mItems;
+            }
+            List<AppItem> result = new ArrayList<>(mItems.size());
+            for (AppItem item : mItems) {
+                if (launchableOnly && !item.launchable) continue;
+                if (!showSystemApps && item.system) continue;
+                result.add(item);
+            }
+            return result;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread whenever a new snapshot is published.
+         */
+        void onCatalogChanged(Snapshot snapshot);
+    }
+
+    private static AppCatalog sInstance;
+
+    private final PackageManager mPackageManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(SCAN_THREADS);
+    // One thread so updates are queried and posted in the order they came in
+    private final ExecutorService mUpdateExecutor = Executors.newSingleThreadExecutor();
+    // Packages with an update queued but not yet queried, guarded by itself
+    private final Set<String> mPendingUpdates = new HashSet<>();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final Collator mCollator = Collator.getInstance();
+    private final Comparator<AppItem> mComparator = (a, b) -> {
+        // Collator isn't thread safe, the scan thread and main thread both sort
+        synchronized (mCollator) {
+            return mCollator.compare(a.label.toString(), b.label.toString());
+        }
+    };
+
+    private volatile Snapshot mSnapshot;
+    private boolean mScanning;
+    private boolean mRescan;
+
+    private AppCatalog(Context context) {
+        mPackageManager = context.getPackageManager();
+        PackageChangeMonitor.getInstance(context).addListener(this);
+    }
+
+    public static synchronized AppCatalog getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the latest snapshot, or null while the initial scan is still running.
+     * Calling this kicks off the initial scan if it has not been started yet.
+     */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            startScan();
+        }
+        return snapshot;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private synchronized void startScan() {
+        if (mScanning) {
+            return;
+        }
+        mScanning = true;
+        runScan();
+    }
+
+    private void runScan() {
+        new Thread(() -> {
+            synchronized (AppCatalog.this) {
+                mRescan = false;
+            }
+            final Snapshot snapshot = scanAll();
+            mMainHandler.post(() -> {
+                publish(snapshot);
+                // Still scanning until the snapshot is out, so changes that came in
+                // meanwhile are never dropped for a missing snapshot
+                finishScan();
+            });
+        }, TAG).start();
+    }
+
+    private synchronized void finishScan() {
+        if (mRescan) {
+            runScan();
+        } else {
+            mScanning = false;
+        }
+    }
+
+    private Set<String> queryLaunchablePackages() {
+        Intent intent = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER);
+        Set<String> packages = new HashSet<>();
+        for (ResolveInfo info : mPackageManager.queryIntentActivities(intent, 0)) {
+            packages.add(info.activityInfo.packageName);
+        }
+        return packages;
+    }
+
+    private Snapshot scanAll() {
+        final List<ApplicationInfo> apps = mPackageManager.getInstalledApplications(0);
+        // One launcher query instead of a getLaunchIntentForPackage call per app
+        final Set<String> launchable = queryLaunchablePackages();
+
+        List<Callable<List<AppItem>>> chunks = new ArrayList<>();
+        final int chunkSize = (apps.size() + SCAN_THREADS - 1) / SCAN_THREADS;
+        for (int start = 0; start < apps.size(); start += chunkSize) {
+            final List<ApplicationInfo> chunk =
+                    apps.subList(start, Math.min(start + chunkSize, apps.size()));
+            chunks.add(() -> {
+                List<AppItem> items = new ArrayList<>(chunk.size());
+                for (ApplicationInfo info : chunk) {
+                    items.add(makeItem(info, launchable.contains(info.packageName)));
+                }
+                return items;
+            });
+        }
+
+        List<AppItem> items = new ArrayList<>(apps.size());
+        try {
+            for (Future<List<AppItem>> future : mExecutor.invokeAll(chunks)) {
+                items.addAll(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(TAG, "Failed to scan installed packages", e);
+        }
+        Collections.sort(items, mComparator);
+        return new Snapshot(items);
+    }
+
+    private AppItem makeItem(ApplicationInfo info, boolean launchable) {
+        return new AppItem(info.packageName, info.loadLabel(mPackageManager), launchable,
+                (info.flags & ApplicationInfo.FLAG_SYSTEM) != 0, info.category,
+                info.category == ApplicationInfo.CATEGORY_GAME);
+    }
+
+    private void publish(Snapshot snapshot) {
+        mSnapshot = snapshot;
+        for (Listener listener : mListeners) {
+            listener.onCatalogChanged(snapshot);
+        }
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, String action) {
+        synchronized (this) {
+            if (mScanning) {
+                // Packages changed under the running scan, redo it
+                mRescan = true;
+                return;
+            }
+        }
+        if (mSnapshot == null) {
+            // Nobody asked for the catalog yet, the initial scan will see the change
+            return;
+        }
+        synchronized (mPendingUpdates) {
+            if (!mPendingUpdates.add(packageName)) {
+                // The queued update hasn't queried yet, it will see this change too
+                return;
+            }
+        }
+        mUpdateExecutor.execute(() -> updatePackage(packageName));
+    }
+
+    private void updatePackage(String packageName) {
+        synchronized (mPendingUpdates) {
+            mPendingUpdates.remove(packageName);
+        }
+        AppItem updated = null;
+        try {
+            ApplicationInfo info = mPackageManager.getApplicationInfo(packageName, 0);
+            Intent launchIntent = mPackageManager.getLaunchIntentForPackage(packageName);
+            updated = makeItem(info, launchIntent != null);
+        } catch (NameNotFoundException e) {
+            // Removed, drop it from the catalog
+        }
+        final AppItem item = updated;
+        mMainHandler.post(() -> {
+            Snapshot current = mSnapshot;
+            List<AppItem> items = new ArrayList<>(current.getItems().size() + 1);
+            for (AppItem existing : current.getItems()) {
+                if (!existing.packageName.equals(packageName)) {
+                    items.add(existing);
+                }
+            }
+            if (item != null) {
+                int index = Collections.binarySearch(items, item, mComparator);
+                items.add(index < 0 ? -index - 1 : index, item);
+            }
+            mSnapshot = new Snapshot(items);
+            for (Listener listener : mListeners) {
+                listener.onCatalogChanged(mSnapshot);
+            }
+        });
+    }
+}
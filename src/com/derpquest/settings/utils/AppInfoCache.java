@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2020 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Size-bounded cache of application labels and icons. Entries are loaded on a
+ * background thread and dropped whenever the package is added, removed or replaced.
+ */
+public final class AppInfoCache implements PackageChangeMonitor.Listener {
+
+    private static final int MAX_ENTRIES = 128;
+    private static final int LOADER_THREADS = 2;
+
+    public static final class AppEntry {
+        public final String packageName;
+        public final long versionCode;
+        public final CharSequence label;
+        public final Drawable icon;
+        public final ApplicationInfo applicationInfo;
+
+        AppEntry(PackageInfo info, CharSequence label, Drawable icon) {
+            this.packageName = info.packageName;
+            this.versionCode = info.getLongVersionCode();
+            this.label = label;
+            this.icon = icon;
+            this.applicationInfo = info.applicationInfo;
+        }
+
+        /**
+         * Returns a copy of the icon that can safely be attached to a view, since
+         * the cached drawable may be shown by several views at once.
+         */
+        public Drawable newIcon() {
+            Drawable.ConstantState state = icon.getConstantState();
+            return state != null ? state.newDrawable() : icon;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Called on the main thread. {@code entry} is null if the package is not installed.
+         */
+        void onAppInfoLoaded(String packageName, AppEntry entry);
+    }
+
+    private static AppInfoCache sInstance;
+
+    private final PackageManager mPackageManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(LOADER_THREADS);
+    private final LruCache<String, AppEntry> mCache = new LruCache<>(MAX_ENTRIES);
+    private final Map<String, List<Callback>> mPending = new HashMap<>();
+    private final Map<String, Integer> mGenerations = new HashMap<>();
+
+    private AppInfoCache(Context context) {
+        mPackageManager = context.getPackageManager();
+        PackageChangeMonitor.getInstance(context).addListener(this);
+    }
+
+    public static synchronized AppInfoCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppInfoCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the cached entry for the package, or null if it has not been loaded yet.
+     */
+    public AppEntry peek(String packageName) {
+        return mCache.get(packageName);
+    }
+
+    /**
+     * Delivers the entry for the package to the callback, loading it off the main
+     * thread if needed. Cached entries are delivered synchronously.
+     */
+    public void load(String packageName, Callback callback) {
+        AppEntry entry = mCache.get(packageName);
+        if (entry != null) {
+            callback.onAppInfoLoaded(packageName, entry);
+            return;
+        }
+        final int generation;
+        synchronized (mPending) {
+            List<Callback> callbacks = mPending.get(packageName);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            mPending.put(packageName, callbacks);
+            generation = getGenerationLocked(packageName);
+        }
+        mExecutor.execute(() -> {
+            final AppEntry loaded = loadEntry(packageName, generation);
+            mMainHandler.post(() -> {
+                List<Callback> callbacks;
+                synchronized (mPending) {
+                    callbacks = mPending.remove(packageName);
+                }
+                if (callbacks == null) return;
+                for (Callback cb : callbacks) {
+                    cb.onAppInfoLoaded(packageName, loaded);
+                }
+            });
+        });
+    }
+
+    /**
+     * Blocking variant of {@link #load} for callers already running in the background.
+     */
+    public AppEntry loadSync(String packageName) {
+        AppEntry entry = mCache.get(packageName);
+        if (entry != null) {
+            return entry;
+        }
+        final int generation;
+        synchronized (mPending) {
+            generation = getGenerationLocked(packageName);
+        }
+        return loadEntry(packageName, generation);
+    }
+
+    private AppEntry loadEntry(String packageName, int generation) {
+        final PackageInfo info;
+        try {
+            info = mPackageManager.getPackageInfo(packageName, 0);
+        } catch (NameNotFoundException e) {
+            return null;
+        }
+        if (info.applicationInfo == null) {
+            return null;
+        }
+        AppEntry cached = mCache.get(packageName);
+        if (cached != null && cached.versionCode == info.getLongVersionCode()) {
+            return cached;
+        }
+        AppEntry entry = new AppEntry(info,
+                info.applicationInfo.loadLabel(mPackageManager),
+                info.applicationInfo.loadIcon(mPackageManager));
+        synchronized (mPending) {
+            // Don't resurrect an entry that was invalidated while we were loading it
+            if (getGenerationLocked(packageName) == generation) {
+                mCache.put(packageName, entry);
+            }
+        }
+        return entry;
+    }
+
+    private int getGenerationLocked(String packageName) {
+        Integer generation = mGenerations.get(packageName);
+        return generation != null ? generation : 0;
+    }
+
+    public void invalidate(String packageName) {
+        synchronized (mPending) {
+            mGenerations.put(packageName, getGenerationLocked(packageName) + 1);
+            mCache.remove(packageName);
+        }
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, String action) {
+        invalidate(packageName);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An automatic on/off schedule as stored by sleep mode and the AOD schedule: a
+ * mode plus the "HH:mm,HH:mm" custom start and end times. Instances are immutable
+ * and cached per settings value, so screens redrawing a summary don't parse the
+ * same string again. Plain Java, no framework classes.
+ */
+public final class AutoSchedule {
+    public static final int MODE_DISABLED = 0;
+    public static final int MODE_TWILIGHT = 1;
+    public static final int MODE_CUSTOM = 2;
+    /** Turns on at sunset, off at the custom end time. */
+    public static final int MODE_MIXED_SUNSET = 3;
+    /** Turns on at the custom start time, off at sunrise. */
+    public static final int MODE_MIXED_SUNRISE = 4;
+
+    public static final String DEFAULT_TIMES = "20:00,07:00";
+
+    private static final DateTimeFormatter SETTING_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+    private static final int CACHE_SIZE = 8;
+
+    private static final Map<String, AutoSchedule> sCache =
+            new LinkedHashMap<String, AutoSchedule>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AutoSchedule> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static Locale sFormatLocale;
+    private static DateTimeFormatter sFormat24;
+    private static DateTimeFormatter sFormat12;
+
+    /**
+     * The next time a schedule flips its state.
+     */
+    public static final class Transition {
+        public final ZonedDateTime time;
+        public final boolean turnsOn;
+
+        Transition(ZonedDateTime time, boolean turnsOn) {
+            this.time = time;
+            this.turnsOn = turnsOn;
+        }
+    }
+
+    private final int mMode;
+    private final LocalTime mSince;
+    private final LocalTime mTill;
+
+    private AutoSchedule(int mode, LocalTime since, LocalTime till) {
+        mMode = mode;
+        mSince = since;
+        mTill = till;
+    }
+
+    /**
+     * Returns the schedule for a mode and a stored times value. Missing or
+     * malformed times fall back to {@link #DEFAULT_TIMES}.
+     */
+    public static AutoSchedule of(int mode, String times) {
+        if (times == null || times.isEmpty()) {
+            times = DEFAULT_TIMES;
+        }
+        final String key = mode + "|" + times;
+        synchronized (sCache) {
+            AutoSchedule schedule = sCache.get(key);
+            if (schedule == null) {
+                schedule = parse(mode, times);
+                sCache.put(key, schedule);
+            }
+            return schedule;
+        }
+    }
+
+    private static AutoSchedule parse(int mode, String times) {
+        final int comma = times.indexOf(',');
+        try {
+            if (comma > 0) {
+                return new AutoSchedule(mode,
+                        LocalTime.parse(times.substring(0, comma), SETTING_FORMAT),
+                        LocalTime.parse(times.substring(comma + 1), SETTING_FORMAT));
+            }
+        } catch (DateTimeParseException e) {
+            // Fall through to the defaults
+        }
+        return parse(mode, DEFAULT_TIMES);
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public LocalTime getSince() {
+        return mSince;
+    }
+
+    public LocalTime getTill() {
+        return mTill;
+    }
+
+    /**
+     * Whether the schedule starts at sunset rather than at {@link #getSince}.
+     */
+    public boolean startsAtSunset() {
+        return mMode == MODE_TWILIGHT || mMode == MODE_MIXED_SUNSET;
+    }
+
+    /**
+     * Whether the schedule ends at sunrise rather than at {@link #getTill}.
+     */
+    public boolean endsAtSunrise() {
+        return mMode == MODE_TWILIGHT || mMode == MODE_MIXED_SUNRISE;
+    }
+
+    /**
+     * The time the schedule turns on, or null if that is sunset and it's unknown.
+     */
+    public LocalTime getStart(LocalTime sunset) {
+        return startsAtSunset() ? sunset : mSince;
+    }
+
+    /**
+     * The time the schedule turns off, or null if that is sunrise and it's unknown.
+     */
+    public LocalTime getEnd(LocalTime sunrise) {
+        return endsAtSunrise() ? sunrise : mTill;
+    }
+
+    public AutoSchedule withSince(LocalTime since) {
+        return of(mMode, toSettingValue(since, mTill));
+    }
+
+    public AutoSchedule withTill(LocalTime till) {
+        return of(mMode, toSettingValue(mSince, till));
+    }
+
+    /**
+     * The custom times in their stored form.
+     */
+    public String getTimesValue() {
+        return toSettingValue(mSince, mTill);
+    }
+
+    private static String toSettingValue(LocalTime since, LocalTime till) {
+        return since.format(SETTING_FORMAT) + "," + till.format(SETTING_FORMAT);
+    }
+
+    /**
+     * Returns the next flip strictly after {@code now}, or null if the schedule is
+     * disabled. Sunset and sunrise may be null for modes that don't use them and are
+     * taken to be the same on consecutive days.
+     */
+    public Transition nextTransition(ZonedDateTime now, LocalTime sunset, LocalTime sunrise) {
+        if (mMode == MODE_DISABLED) {
+            return null;
+        }
+        final ZonedDateTime on = nextOccurrence(now, getStart(sunset));
+        final ZonedDateTime off = nextOccurrence(now, getEnd(sunrise));
+        if (on == null || off == null) {
+            throw new IllegalArgumentException("Mode " + mMode + " needs sunset and sunrise");
+        }
+        return on.isBefore(off) ? new Transition(on, true) : new Transition(off, false);
+    }
+
+    /**
+     * Whether the schedule is on at {@code time}, wrapping around midnight.
+     */
+    public boolean isActiveAt(LocalTime time, LocalTime sunset, LocalTime sunrise) {
+        if (mMode == MODE_DISABLED) {
+            return false;
+        }
+        final LocalTime start = getStart(sunset);
+        final LocalTime end = getEnd(sunrise);
+        if (start == null || end == null) {
+            throw new IllegalArgumentException("Mode " + mMode + " needs sunset and sunrise");
+        }
+        if (start.isBefore(end)) {
+            return !time.isBefore(start) && time.isBefore(end);
+        }
+        return !time.isBefore(start) || time.isBefore(end);
+    }
+
+    private static ZonedDateTime nextOccurrence(ZonedDateTime now, LocalTime time) {
+        if (time == null) {
+            return null;
+        }
+        // ZonedDateTime.with() moves times in a DST gap forward and keeps the
+        // earlier offset in an overlap, so the result is always a real instant
+        ZonedDateTime next = now.with(time);
+        if (!next.isAfter(now)) {
+            next = now.toLocalDate().plusDays(1).atTime(time).atZone(now.getZone());
+        }
+        return next;
+    }
+
+    /**
+     * Formats a time for display, cached per locale.
+     */
+    public static synchronized String format(LocalTime time, boolean is24Hour) {
+        final Locale locale = Locale.getDefault();
+        if (!locale.equals(sFormatLocale)) {
+            sFormatLocale = locale;
+            sFormat24 = DateTimeFormatter.ofPattern("HH:mm", locale);
+            sFormat12 = DateTimeFormatter.ofPattern("h:mm a", locale);
+        }
+        return time.format(is24Hour ? sFormat24 : sFormat12);
+    }
+
+    @Override
+    public String toString() {
+        return "AutoSchedule{mode=" + mMode + ", times=" + getTimesValue() + "}";
+    }
+}
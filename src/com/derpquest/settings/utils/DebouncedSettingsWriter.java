@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.ContentResolver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.util.Log;
+
+/**
+ * Debounces Settings writes coming from seek bars. Values are held until the user
+ * stops moving the slider for the debounce window, but never for longer than the
+ * max delay, so SystemUI still follows a long drag. Owners must call {@link #flush}
+ * from onPause so the final value always lands.
+ */
+public final class DebouncedSettingsWriter {
+    private static final String TAG = "DebouncedSettingsWriter";
+
+    public static final long DEFAULT_WINDOW_MS = 150;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ContentResolver mResolver;
+    private final int mTable;
+    private final long mWindowMs;
+    private final long mMaxDelayMs;
+    private int mUserId = UserHandle.myUserId();
+
+    private SettingsTransaction mPending;
+    private long mFirstPendingTime;
+    private int mSubmitted;
+    private int mCommitted;
+
+    private final Runnable mFlushRunnable = this::flush;
+
+    private DebouncedSettingsWriter(ContentResolver resolver, int table, long windowMs) {
+        mResolver = resolver;
+        mTable = table;
+        mWindowMs = windowMs;
+        mMaxDelayMs = windowMs * 4;
+    }
+
+    public static DebouncedSettingsWriter system(ContentResolver resolver) {
+        return system(resolver, DEFAULT_WINDOW_MS);
+    }
+
+    public static DebouncedSettingsWriter system(ContentResolver resolver, long windowMs) {
+        return new DebouncedSettingsWriter(resolver, SettingsTransaction.TABLE_SYSTEM, windowMs);
+    }
+
+    public static DebouncedSettingsWriter secure(ContentResolver resolver) {
+        return secure(resolver, DEFAULT_WINDOW_MS);
+    }
+
+    public static DebouncedSettingsWriter secure(ContentResolver resolver, long windowMs) {
+        return new DebouncedSettingsWriter(resolver, SettingsTransaction.TABLE_SECURE, windowMs);
+    }
+
+    public DebouncedSettingsWriter forUser(int userId) {
+        mUserId = userId;
+        return this;
+    }
+
+    public void putInt(String key, int value) {
+        mSubmitted++;
+        final long now = SystemClock.uptimeMillis();
+        if (mPending == null) {
+            mPending = mTable == SettingsTransaction.TABLE_SECURE
+                    ? SettingsTransaction.secure(mResolver)
+                    : SettingsTransaction.system(mResolver);
+            mPending.forUser(mUserId);
+            mFirstPendingTime = now;
+        }
+        mPending.putInt(key, value);
+
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (now - mFirstPendingTime >= mMaxDelayMs) {
+            flush();
+        } else {
+            mHandler.postDelayed(mFlushRunnable, mWindowMs);
+        }
+    }
+
+    /**
+     * Commits any pending values right away.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPending == null) {
+            return;
+        }
+        mPending.commit((writes, latencyMs) -> {
+            mCommitted += writes;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "submitted=" + mSubmitted + " committed=" + mCommitted);
+            }
+        });
+        mPending = null;
+    }
+
+    /**
+     * Number of values handed to this writer.
+     */
+    public int getSubmittedCount() {
+        return mSubmitted;
+    }
+
+    /**
+     * Number of values that actually reached Settings.
+     */
+    public int getCommittedCount() {
+        return mCommitted;
+    }
+}
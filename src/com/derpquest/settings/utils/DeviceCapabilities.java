@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.net.ConnectivityManager;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.SystemProperties;
+import android.telephony.TelephonyManager;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.internal.util.derp.derpUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hardware and build facts that can only change with a new build: flashlight,
+ * blur, telephony and FOD support. They are worked out once per build
+ * fingerprint and kept in a small file, so later processes load them with one
+ * file read instead of going through camera, telephony and connectivity. The
+ * file is only written when every probe got an answer, and the notch is always
+ * read live since cutout emulation can change it at runtime.
+ */
+public final class DeviceCapabilities {
+    private static final String TAG = "DeviceCapabilities";
+
+    private static final String FILE_NAME = "device_capabilities";
+
+    private static final int FLAG_FLASHLIGHT = 1 << 0;
+    private static final int FLAG_BLUR = 1 << 1;
+    private static final int FLAG_VOICE_CAPABLE = 1 << 2;
+    private static final int FLAG_WIFI_ONLY = 1 << 3;
+    private static final int FLAG_CUSTOM_FOD_VIEW = 1 << 5;
+    // Set while computing when a probe failed, never stored
+    private static final int FLAG_INCOMPLETE = 1 << 31;
+
+    private static DeviceCapabilities sInstance;
+
+    private final Context mContext;
+    private final int mFlags;
+
+    private DeviceCapabilities(Context context, int flags) {
+        mContext = context;
+        mFlags = flags;
+    }
+
+    public static synchronized DeviceCapabilities getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            final AtomicFile file = new AtomicFile(
+                    new File(appContext.getNoBackupFilesDir(), FILE_NAME));
+            Integer flags = read(file);
+            if (flags == null) {
+                flags = compute(appContext);
+                if ((flags & FLAG_INCOMPLETE) != 0) {
+                    // Try again in the next process rather than keep a wrong answer
+                    flags &= ~FLAG_INCOMPLETE;
+                } else {
+                    final int computed = flags;
+                    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> write(file, computed));
+                }
+            }
+            sInstance = new DeviceCapabilities(appContext, flags);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Whether there is a back camera with a flash unit.
+     */
+    public boolean hasFlashlight() {
+        return has(FLAG_FLASHLIGHT);
+    }
+
+    /**
+     * Whether background blur can be used. The user can turn blurs off at runtime,
+     * that property is read on every call.
+     */
+    public boolean isBlurSupported() {
+        return has(FLAG_BLUR)
+                && !SystemProperties.getBoolean("persist.sys.sf.disable_blurs", false);
+    }
+
+    public boolean isVoiceCapable() {
+        return has(FLAG_VOICE_CAPABLE);
+    }
+
+    public boolean isWifiOnly() {
+        return has(FLAG_WIFI_ONLY);
+    }
+
+    public boolean hasNotch() {
+        return derpUtils.hasNotch(mContext);
+    }
+
+    public boolean needsCustomFodView() {
+        return has(FLAG_CUSTOM_FOD_VIEW);
+    }
+
+    private boolean has(int flag) {
+        return (mFlags & flag) != 0;
+    }
+
+    private static Integer read(AtomicFile file) {
+        try {
+            final String[] lines = new String(file.readFully(), StandardCharsets.UTF_8).split("\n");
+            if (lines.length >= 2 && Build.FINGERPRINT.equals(lines[0])) {
+                return Integer.parseInt(lines[1]);
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Missing or unreadable, computed again below
+        }
+        return null;
+    }
+
+    private static void write(AtomicFile file, int flags) {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write((Build.FINGERPRINT + "\n" + flags + "\n").getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save device capabilities", e);
+            file.failWrite(out);
+        }
+    }
+
+    private static int compute(Context context) {
+        int flags = 0;
+        final Boolean flashlight = computeFlashlight(context);
+        if (flashlight == null) {
+            flags |= FLAG_INCOMPLETE;
+        } else if (flashlight) {
+            flags |= FLAG_FLASHLIGHT;
+        }
+        if (SystemProperties.getBoolean("ro.surface_flinger.supports_background_blur", false)
+                && ActivityManager.isHighEndGfx()) {
+            flags |= FLAG_BLUR;
+        }
+        TelephonyManager telephony = context.getSystemService(TelephonyManager.class);
+        if (telephony == null) {
+            flags |= FLAG_INCOMPLETE;
+        } else if (telephony.isVoiceCapable()) {
+            flags |= FLAG_VOICE_CAPABLE;
+        }
+        ConnectivityManager cm = context.getSystemService(ConnectivityManager.class);
+        if (cm == null) {
+            flags |= FLAG_INCOMPLETE;
+        } else if (!cm.isNetworkSupported(ConnectivityManager.TYPE_MOBILE)) {
+            flags |= FLAG_WIFI_ONLY;
+        }
+        if (context.getResources().getBoolean(
+                com.android.internal.R.bool.config_needCustomFODView)) {
+            flags |= FLAG_CUSTOM_FOD_VIEW;
+        }
+        return flags;
+    }
+
+    /**
+     * Returns null when the camera service couldn't be asked.
+     */
+    private static Boolean computeFlashlight(Context context) {
+        CameraManager cameraManager = context.getSystemService(CameraManager.class);
+        if (cameraManager == null) {
+            return null;
+        }
+        try {
+            for (String id : cameraManager.getCameraIdList()) {
+                CameraCharacteristics c = cameraManager.getCameraCharacteristics(id);
+                Boolean flashAvailable = c.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+                Integer lensFacing = c.get(CameraCharacteristics.LENS_FACING);
+                if (flashAvailable != null && flashAvailable
+                        && lensFacing != null
+                        && lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
+                    return true;
+                }
+            }
+        } catch (CameraAccessException e) {
+            Log.w(TAG, "Camera service unavailable, flashlight not cached", e);
+            return null;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.SparseIntArray;
+import android.view.Display;
+import android.view.DisplayInfo;
+
+/**
+ * Phone, hybrid or tablet class of the display a context is shown on. Results are
+ * cached per display together with the smallest width they were computed for, and
+ * dropped when the display or the configuration changes, so folding, unfolding or
+ * moving to another display is picked up. Cached reads don't allocate.
+ */
+public final class DeviceClassResolver {
+    public static final int DEVICE_PHONE = 0;
+    public static final int DEVICE_HYBRID = 1;
+    public static final int DEVICE_TABLET = 2;
+
+    // Cache entries pack the configuration's smallest width above the class
+    private static final int CLASS_BITS = 2;
+    private static final int CLASS_MASK = (1 << CLASS_BITS) - 1;
+
+    private static DeviceClassResolver sInstance;
+
+    private final DisplayManager mDisplayManager;
+    private final SparseIntArray mCache = new SparseIntArray(2);
+    private final DisplayInfo mDisplayInfo = new DisplayInfo();
+
+    private final DisplayManager.DisplayListener mDisplayListener =
+            new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+            invalidate(displayId);
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            invalidate(displayId);
+        }
+    };
+
+    private final ComponentCallbacks mConfigurationCallbacks = new ComponentCallbacks() {
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            synchronized (DeviceClassResolver.this) {
+                mCache.clear();
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    };
+
+    private DeviceClassResolver(Context context) {
+        mDisplayManager = context.getSystemService(DisplayManager.class);
+        mDisplayManager.registerDisplayListener(mDisplayListener,
+                new Handler(Looper.getMainLooper()));
+        context.registerComponentCallbacks(mConfigurationCallbacks);
+    }
+
+    public static synchronized DeviceClassResolver getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DeviceClassResolver(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns one of {@link #DEVICE_PHONE}, {@link #DEVICE_HYBRID} or
+     * {@link #DEVICE_TABLET} for the display of {@code context}.
+     */
+    public synchronized int getDeviceClass(Context context) {
+        final int displayId = context.getDisplayId();
+        final int smallestWidthDp = context.getResources().getConfiguration().smallestScreenWidthDp;
+        final int entry = mCache.get(displayId, -1);
+        if (entry >= 0 && (entry >> CLASS_BITS) == smallestWidthDp) {
+            return entry & CLASS_MASK;
+        }
+        final int deviceClass = compute(displayId, smallestWidthDp);
+        mCache.put(displayId, (smallestWidthDp << CLASS_BITS) | deviceClass);
+        return deviceClass;
+    }
+
+    private int compute(int displayId, int smallestWidthDp) {
+        int shortSizeDp = smallestWidthDp;
+        final Display display = mDisplayManager.getDisplay(displayId);
+        if (display != null && display.getDisplayInfo(mDisplayInfo)) {
+            // The whole display, not the window, as the system bars are laid out for it
+            int shortSize = Math.min(mDisplayInfo.logicalHeight, mDisplayInfo.logicalWidth);
+            shortSizeDp = shortSize * DisplayMetrics.DENSITY_DEFAULT
+                    / mDisplayInfo.logicalDensityDpi;
+        }
+        if (shortSizeDp < 600) {
+            // 0-599dp: "phone" UI with a separate status & navigation bar
+            return DEVICE_PHONE;
+        } else if (shortSizeDp < 720) {
+            // 600-719dp: "phone" UI with modifications for larger screens
+            return DEVICE_HYBRID;
+        }
+        // 720dp: "tablet" UI with a single combined status & navigation bar
+        return DEVICE_TABLET;
+    }
+
+    private synchronized void invalidate(int displayId) {
+        mCache.delete(displayId);
+    }
+}
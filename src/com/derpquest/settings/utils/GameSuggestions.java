@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.derpquest.settings.utils.AppCatalog.AppItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Launchable apps that declare themselves games, ranked by how much they were
+ * played lately, as candidates for the gaming mode app list. Classification rides
+ * on the {@link AppCatalog} scan, so installs and updates are picked up one package
+ * at a time, and usage stats are only queried again once they are an hour old.
+ */
+public final class GameSuggestions implements AppCatalog.Listener {
+    private static final String TAG = "GameSuggestions";
+
+    private static final long USAGE_WINDOW_MS = 14 * 24 * 60 * 60 * 1000L;
+    private static final long USAGE_MAX_AGE_MS = 60 * 60 * 1000L;
+
+    public static final class Suggestion {
+        public final String packageName;
+        public final CharSequence label;
+        /** Time in the foreground over the last two weeks. */
+        public final long foregroundMs;
+
+        Suggestion(AppItem item, long foregroundMs) {
+            this.packageName = item.packageName;
+            this.label = item.label;
+            this.foregroundMs = foregroundMs;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the new ranking, best match first.
+         */
+        void onSuggestionsChanged(List<Suggestion> suggestions);
+    }
+
+    private static GameSuggestions sInstance;
+
+    private final AppCatalog mCatalog;
+    private final UsageStatsManager mUsageStatsManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    // Main thread only
+    private List<Suggestion> mSuggestions;
+    private AppCatalog.Snapshot mPendingSnapshot;
+    // Ranking thread only
+    private Map<String, UsageStats> mUsage;
+    private long mUsageTime;
+
+    private GameSuggestions(Context context) {
+        mCatalog = AppCatalog.getInstance(context);
+        mUsageStatsManager = context.getSystemService(UsageStatsManager.class);
+        mCatalog.addListener(this);
+    }
+
+    public static synchronized GameSuggestions getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new GameSuggestions(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the latest ranking, or null until the first one is ready. Listeners
+     * hear about it once it is.
+     */
+    public List<Suggestion> getSuggestions() {
+        if (mSuggestions == null) {
+            AppCatalog.Snapshot snapshot = mCatalog.getSnapshot();
+            if (snapshot != null) {
+                onCatalogChanged(snapshot);
+            }
+        }
+        return mSuggestions;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public void onCatalogChanged(AppCatalog.Snapshot snapshot) {
+        final boolean queued = mPendingSnapshot != null;
+        // Only the newest catalog is worth ranking
+        mPendingSnapshot = snapshot;
+        if (queued) {
+            return;
+        }
+        mMainHandler.post(() -> {
+            final AppCatalog.Snapshot latest = mPendingSnapshot;
+            mPendingSnapshot = null;
+            mExecutor.execute(() -> rank(latest));
+        });
+    }
+
+    private void rank(AppCatalog.Snapshot snapshot) {
+        final Map<String, UsageStats> usage = getUsage();
+        final List<Suggestion> suggestions = new ArrayList<>();
+        for (AppItem item : snapshot.getItems()) {
+            if (!item.game || !item.launchable) {
+                continue;
+            }
+            final UsageStats stats = usage.get(item.packageName);
+            suggestions.add(new Suggestion(item,
+                    stats != null ? stats.getTotalTimeInForeground() : 0));
+        }
+        // Most played first, the sort is stable so ties keep the catalog's label order
+        Collections.sort(suggestions,
+                (a, b) -> Long.compare(b.foregroundMs, a.foregroundMs));
+        final List<Suggestion> result = Collections.unmodifiableList(suggestions);
+        mMainHandler.post(() -> {
+            mSuggestions = result;
+            for (Listener listener : mListeners) {
+                listener.onSuggestionsChanged(result);
+            }
+        });
+    }
+
+    private Map<String, UsageStats> getUsage() {
+        final long now = SystemClock.elapsedRealtime();
+        if (mUsage == null || now - mUsageTime > USAGE_MAX_AGE_MS) {
+            final long end = System.currentTimeMillis();
+            Map<String, UsageStats> usage = null;
+            try {
+                usage = mUsageStatsManager.queryAndAggregateUsageStats(
+                        end - USAGE_WINDOW_MS, end);
+            } catch (SecurityException e) {
+                Log.w(TAG, "Usage stats unavailable, ranking by label only", e);
+            }
+            mUsage = usage != null ? usage : Collections.emptyMap();
+            mUsageTime = now;
+        }
+        return mUsage;
+    }
+}
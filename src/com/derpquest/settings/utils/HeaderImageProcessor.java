@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Turns a user-picked QS header image into a copy sized for the QS header, so the
+ * work SystemUI does to show it no longer depends on the size of the original photo.
+ * The copy goes to the media store, which SystemUI already reads picked images
+ * from, so it survives cache trims, reboots and SystemUI restarts without a grant.
+ */
+public final class HeaderImageProcessor {
+    private static final String TAG = "HeaderImageProcessor";
+
+    private static final String SYSTEMUI_PACKAGE = "com.android.systemui";
+    private static final String HEADER_DIR = Environment.DIRECTORY_PICTURES + "/QSHeader/";
+    private static final String HEADER_FILE_PREFIX = "header_";
+    private static final int JPEG_QUALITY = 90;
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the URI of the optimized copy, or null if the
+         * image could not be processed.
+         */
+        void onHeaderImageProcessed(Uri optimizedUri);
+    }
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private HeaderImageProcessor() {
+    }
+
+    public static void process(Context context, Uri source, Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        final int[] size = getHeaderSize(appContext);
+        sExecutor.execute(() -> {
+            final Uri result = processSync(appContext, source, size[0], size[1]);
+            sMainHandler.post(() -> callback.onHeaderImageProcessed(result));
+        });
+    }
+
+    /**
+     * Deletes the copies made earlier except {@code keep}. Call it once the header
+     * setting no longer points at them.
+     */
+    public static void deleteOlderCopies(Context context, Uri keep) {
+        final ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        sExecutor.execute(() -> {
+            final Uri collection = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+            try (Cursor cursor = resolver.query(collection,
+                    new String[] { MediaStore.MediaColumns._ID },
+                    MediaStore.MediaColumns.RELATIVE_PATH + "=? AND "
+                            + MediaStore.MediaColumns.DISPLAY_NAME + " LIKE ?",
+                    new String[] { HEADER_DIR, HEADER_FILE_PREFIX + "%" }, null)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    final Uri uri = ContentUris.withAppendedId(collection, cursor.getLong(0));
+                    if (!uri.equals(keep)) {
+                        resolver.delete(uri, null, null);
+                    }
+                }
+            } catch (SecurityException e) {
+                Log.w(TAG, "Failed to delete older header copies", e);
+            }
+        });
+    }
+
+    /**
+     * Returns the width and height the QS header image is drawn at.
+     */
+    private static int[] getHeaderSize(Context context) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        // The header spans the panel width in either orientation
+        int width = Math.max(metrics.widthPixels, metrics.heightPixels);
+        int height = width / 2;
+        try {
+            Resources res = context.getPackageManager()
+                    .getResourcesForApplication(SYSTEMUI_PACKAGE);
+            int id = res.getIdentifier("qs_header_image_height", "dimen", SYSTEMUI_PACKAGE);
+            if (id != 0) {
+                height = res.getDimensionPixelSize(id);
+            }
+        } catch (Exception e) {
+            // Keep the estimate
+        }
+        return new int[] { width, height };
+    }
+
+    private static Uri processSync(Context context, Uri source, int width, int height) {
+        final ContentResolver resolver = context.getContentResolver();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        if (!decode(resolver, source, options) || options.outWidth <= 0
+                || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Subsample while the image still covers the header on both axes
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = decodeBitmap(resolver, source, options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        float scale = Math.max((float) width / bitmap.getWidth(),
+                (float) height / bitmap.getHeight());
+        if (scale < 1f) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.round(bitmap.getWidth() * scale),
+                    Math.round(bitmap.getHeight() * scale), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+
+        final Uri uri = writeHeaderImage(resolver, bitmap);
+        bitmap.recycle();
+        return uri;
+    }
+
+    private static Uri writeHeaderImage(ContentResolver resolver, Bitmap bitmap) {
+        final boolean png = bitmap.hasAlpha();
+        final ContentValues values = new ContentValues();
+        // A new name every time so the setting value changes and SystemUI reloads
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, HEADER_FILE_PREFIX
+                + System.currentTimeMillis() + (png ? ".png" : ".jpg"));
+        values.put(MediaStore.MediaColumns.MIME_TYPE, png ? "image/png" : "image/jpeg");
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, HEADER_DIR);
+        // Hidden from readers until it is completely written
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+        Uri uri = null;
+        try {
+            uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            if (uri == null) {
+                return null;
+            }
+            try (OutputStream out = resolver.openOutputStream(uri)) {
+                if (out == null || !bitmap.compress(png ? Bitmap.CompressFormat.PNG
+                        : Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                    throw new IOException("Failed to encode header image");
+                }
+            }
+            values.clear();
+            values.put(MediaStore.MediaColumns.IS_PENDING, 0);
+            resolver.update(uri, values, null, null);
+            return uri;
+        } catch (IOException | IllegalArgumentException | SecurityException e) {
+            Log.w(TAG, "Failed to write header image", e);
+            if (uri != null) {
+                resolver.delete(uri, null, null);
+            }
+            return null;
+        }
+    }
+
+    private static boolean decode(ContentResolver resolver, Uri uri,
+            BitmapFactory.Options options) {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                return false;
+            }
+            BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, options);
+            return true;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Failed to read " + uri, e);
+            return false;
+        }
+    }
+
+    private static Bitmap decodeBitmap(ContentResolver resolver, Uri uri,
+            BitmapFactory.Options options) {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                return null;
+            }
+            return BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, options);
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Failed to decode " + uri, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Cached list of installed daylight header packs. Both header pack actions are
+ * resolved in parallel off the main thread and the result is kept until a package
+ * changes.
+ */
+public final class HeaderPackRegistry implements PackageChangeMonitor.Listener {
+    private static final String TAG = "HeaderPackRegistry";
+
+    private static final String ACTION_HEADER_PACK = "org.omnirom.DaylightHeaderPack";
+    private static final String ACTION_HEADER_PACK_1 = "org.omnirom.DaylightHeaderPack1";
+
+    public static final class HeaderPacks {
+        public final String[] entries;
+        public final String[] values;
+
+        HeaderPacks(String[] entries, String[] values) {
+            this.entries = entries;
+            this.values = values;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Called on the main thread once the header packs are known.
+         */
+        void onHeaderPacksLoaded(HeaderPacks packs);
+    }
+
+    private static HeaderPackRegistry sInstance;
+
+    private final PackageManager mPackageManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mLoader = Executors.newSingleThreadExecutor();
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+    private final List<Callback> mPending = new ArrayList<>();
+
+    private HeaderPacks mPacks;
+    private int mGeneration;
+
+    private HeaderPackRegistry(Context context) {
+        mPackageManager = context.getPackageManager();
+        PackageChangeMonitor.getInstance(context).addListener(this);
+    }
+
+    public static synchronized HeaderPackRegistry getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new HeaderPackRegistry(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Delivers the header packs to the callback, synchronously if they are cached.
+     * Must be called on the main thread.
+     */
+    public void load(Callback callback) {
+        if (mPacks != null) {
+            callback.onHeaderPacksLoaded(mPacks);
+            return;
+        }
+        mPending.add(callback);
+        if (mPending.size() > 1) {
+            // A query is already running
+            return;
+        }
+        final int generation = mGeneration;
+        mLoader.execute(() -> {
+            final HeaderPacks packs = query();
+            mMainHandler.post(() -> {
+                if (generation == mGeneration) {
+                    mPacks = packs;
+                }
+                List<Callback> callbacks = new ArrayList<>(mPending);
+                mPending.clear();
+                for (Callback cb : callbacks) {
+                    cb.onHeaderPacksLoaded(packs);
+                }
+            });
+        });
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, String action) {
+        mGeneration++;
+        mPacks = null;
+    }
+
+    private HeaderPacks query() {
+        Future<List<ResolveInfo>> packs = mExecutor.submit(() -> queryAction(ACTION_HEADER_PACK));
+        Future<List<ResolveInfo>> packs1 = mExecutor.submit(() -> queryAction(ACTION_HEADER_PACK_1));
+
+        Map<String, String> headerMap = new HashMap<String, String>();
+        try {
+            for (ResolveInfo r : packs.get()) {
+                String packageName = r.activityInfo.packageName;
+                CharSequence label = r.activityInfo.loadLabel(mPackageManager);
+                headerMap.put(label != null ? label.toString() : packageName, packageName);
+            }
+            for (ResolveInfo r : packs1.get()) {
+                if (r.activityInfo.name.endsWith(".theme")) {
+                    continue;
+                }
+                String packageName = r.activityInfo.packageName;
+                CharSequence label = r.activityInfo.loadLabel(mPackageManager);
+                headerMap.put(label != null ? label.toString() : packageName,
+                        packageName + "/" + r.activityInfo.name);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(TAG, "Failed to query header packs", e);
+        }
+
+        List<String> labelList = new ArrayList<String>(headerMap.keySet());
+        Collections.sort(labelList);
+        String[] entries = new String[labelList.size()];
+        String[] values = new String[labelList.size()];
+        for (int i = 0; i < labelList.size(); i++) {
+            entries[i] = labelList.get(i);
+            values[i] = headerMap.get(labelList.get(i));
+        }
+        return new HeaderPacks(entries, values);
+    }
+
+    private List<ResolveInfo> queryAction(String action) {
+        return mPackageManager.queryIntentActivities(new Intent(action), 0);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes user-picked images off the main thread at the size they are shown at.
+ * Only the image bounds are read first, the pixels are then decoded subsampled,
+ * and thumbnails are cached by URI, modification time and size.
+ */
+public final class ImageThumbnailLoader {
+    private static final String TAG = "ImageThumbnailLoader";
+
+    private static final int CACHE_SIZE_BYTES = 4 * 1024 * 1024;
+
+    public interface Callback {
+        /**
+         * Called on the main thread. {@code thumbnail} is null if the image could not
+         * be read or did not have the required type.
+         */
+        void onThumbnailLoaded(Uri uri, Bitmap thumbnail);
+    }
+
+    private static ImageThumbnailLoader sInstance;
+
+    private final Context mContext;
+    private final ContentResolver mResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final LruCache<String, Bitmap> mCache = new LruCache<String, Bitmap>(CACHE_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+        }
+    };
+
+    private ImageThumbnailLoader(Context context) {
+        mContext = context;
+        mResolver = context.getContentResolver();
+    }
+
+    public static synchronized ImageThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageThumbnailLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Loads a thumbnail no smaller than {@code targetSize} pixels on its short side.
+     *
+     * @param requiredMimeType reject images of any other type, or null to accept any
+     */
+    public void load(Uri uri, int targetSize, String requiredMimeType, Callback callback) {
+        mExecutor.execute(() -> {
+            final Bitmap thumbnail = loadSync(uri, targetSize, requiredMimeType);
+            mMainHandler.post(() -> callback.onThumbnailLoaded(uri, thumbnail));
+        });
+    }
+
+    /**
+     * Blocking variant of {@link #load} for callers already off the main thread.
+     */
+    public Bitmap loadSync(Uri uri, int targetSize, String requiredMimeType) {
+        final String key = uri + "@" + getLastModified(uri) + "/" + targetSize;
+        Bitmap cached = mCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        BitmapFactory.Options options = decodeBounds(uri);
+        if (options == null || options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        if (requiredMimeType != null && !requiredMimeType.equals(options.outMimeType)) {
+            Log.w(TAG, uri + " is " + options.outMimeType + ", expected " + requiredMimeType);
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight, targetSize);
+        Bitmap thumbnail = decode(uri, options);
+        if (thumbnail != null) {
+            mCache.put(key, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Returns the largest power of two subsampling that keeps the short side of the
+     * image at or above {@code targetSize}.
+     */
+    public static int computeSampleSize(int width, int height, int targetSize) {
+        int shortSide = Math.min(width, height);
+        int sampleSize = 1;
+        while (targetSize > 0 && shortSide / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private BitmapFactory.Options decodeBounds(Uri uri) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (ParcelFileDescriptor pfd = mResolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                return null;
+            }
+            BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, options);
+            return options;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Failed to read " + uri, e);
+            return null;
+        }
+    }
+
+    private Bitmap decode(Uri uri, BitmapFactory.Options options) {
+        try (ParcelFileDescriptor pfd = mResolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                return null;
+            }
+            return BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, options);
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Failed to decode " + uri, e);
+            return null;
+        }
+    }
+
+    private long getLastModified(Uri uri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return 0;
+        }
+        final String column = DocumentsContract.isDocumentUri(mContext, uri)
+                ? DocumentsContract.Document.COLUMN_LAST_MODIFIED
+                : MediaStore.MediaColumns.DATE_MODIFIED;
+        try (Cursor cursor = mResolver.query(uri, new String[] { column }, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // Provider doesn't expose the column, fall back to the URI alone
+        }
+        return 0;
+    }
+}
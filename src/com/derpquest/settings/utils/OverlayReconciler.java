@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.Context;
+import android.content.om.IOverlayManager;
+import android.content.om.OverlayInfo;
+import android.os.RemoteException;
+import android.os.UserHandle;
+import android.util.ArraySet;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings a category of overlays to a target state with as few overlay manager calls
+ * as possible: the current state comes from {@link OverlayStateIndex}, only overlays
+ * whose state differs are toggled, and assets are reloaded once, only for the
+ * packages those overlays target. Framework overlays also reload Settings and
+ * SystemUI, which show the framework resources right away.
+ */
+public final class OverlayReconciler {
+    private static final String TAG = "OverlayReconciler";
+
+    private static final String ANDROID_PACKAGE = "android";
+    private static final String[] ANDROID_DEPENDENTS = {
+        "com.android.settings",
+        "com.android.systemui",
+    };
+
+    private final IOverlayManager mOverlayManager;
+    private final int mUserId;
+    private final OverlayStateIndex mIndex;
+
+    public OverlayReconciler(Context context, IOverlayManager overlayManager, int userId) {
+        mOverlayManager = overlayManager;
+        mUserId = userId;
+        // The diff has to be taken against the user the changes are made for
+        mIndex = OverlayStateIndex.getInstance(context, userId);
+    }
+
+    public OverlayStateIndex getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Enables {@code target} and disables every other overlay in {@code category}.
+     * A null target disables the whole category.
+     *
+     * @return the target packages affected by the change
+     */
+    public Set<String> applyExclusive(String[] category, String target) {
+        return apply(category, target != null
+                ? Collections.singleton(target) : Collections.<String>emptySet());
+    }
+
+    /**
+     * Enables exactly the overlays in {@code enabled} among {@code category}.
+     *
+     * @return the target packages affected by the change
+     */
+    public Set<String> apply(String[] category, Set<String> enabled) {
+        final List<OverlayInfo> toDisable = new ArrayList<>();
+        final List<OverlayInfo> toEnable = new ArrayList<>();
+        for (String overlay : category) {
+            OverlayInfo info = mIndex.getOverlayInfo(overlay);
+            if (info == null) {
+                // Not installed
+                continue;
+            }
+            boolean wanted = enabled.contains(overlay);
+            if (info.isEnabled() != wanted) {
+                (wanted ? toEnable : toDisable).add(info);
+            }
+        }
+
+        final Set<String> affected = new ArraySet<>();
+        // Disable first so two overlays of a category are never on at once
+        for (OverlayInfo info : toDisable) {
+            if (setEnabled(info.packageName, false)) {
+                affected.add(info.targetPackageName);
+            }
+        }
+        for (OverlayInfo info : toEnable) {
+            if (setEnabled(info.packageName, true)) {
+                affected.add(info.targetPackageName);
+            }
+        }
+        if (!affected.isEmpty()) {
+            // Don't wait for the broadcast, the caller may read the state right away
+            mIndex.invalidate();
+        }
+        return affected;
+    }
+
+    /**
+     * Reloads assets once for the given overlay targets.
+     */
+    public void reloadAssets(Set<String> targets) {
+        if (targets.contains(ANDROID_PACKAGE)) {
+            targets = new ArraySet<>(targets);
+            Collections.addAll(targets, ANDROID_DEPENDENTS);
+        }
+        try {
+            if (targets.contains(ANDROID_PACKAGE)) {
+                mOverlayManager.reloadAndroidAssets(UserHandle.USER_CURRENT);
+            }
+            for (String target : targets) {
+                if (!ANDROID_PACKAGE.equals(target)) {
+                    mOverlayManager.reloadAssets(target, UserHandle.USER_CURRENT);
+                }
+            }
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to reload assets for " + targets, e);
+        }
+    }
+
+    private boolean setEnabled(String overlay, boolean enabled) {
+        try {
+            return mOverlayManager.setEnabled(overlay, enabled, mUserId);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to " + (enabled ? "enable " : "disable ") + overlay, e);
+            return false;
+        }
+    }
+}
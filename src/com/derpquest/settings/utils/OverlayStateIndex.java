@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.om.IOverlayManager;
+import android.content.om.OverlayInfo;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.os.UserHandle;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory view of every overlay for one user, fetched with a single overlay
+ * manager query and dropped whenever an overlay changes. Read the index of the
+ * same user overlays are changed for, their states differ between users.
+ */
+public final class OverlayStateIndex {
+    private static final String TAG = "OverlayStateIndex";
+
+    private static final SparseArray<OverlayStateIndex> sInstances = new SparseArray<>();
+
+    private final IOverlayManager mOverlayManager;
+    private final int mUserId;
+    private Map<String, OverlayInfo> mOverlays;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    private OverlayStateIndex(Context context, int userId) {
+        mUserId = userId;
+        mOverlayManager = IOverlayManager.Stub.asInterface(
+                ServiceManager.getService(Context.OVERLAY_SERVICE));
+        IntentFilter filter = new IntentFilter(Intent.ACTION_OVERLAY_CHANGED);
+        filter.addDataScheme("package");
+        context.registerReceiver(mReceiver, filter);
+    }
+
+    /**
+     * Returns the index for the current user.
+     */
+    public static OverlayStateIndex getInstance(Context context) {
+        return getInstance(context, UserHandle.USER_CURRENT);
+    }
+
+    public static synchronized OverlayStateIndex getInstance(Context context, int userId) {
+        OverlayStateIndex index = sInstances.get(userId);
+        if (index == null) {
+            index = new OverlayStateIndex(context.getApplicationContext(), userId);
+            sInstances.put(userId, index);
+        }
+        return index;
+    }
+
+    public int getUserId() {
+        return mUserId;
+    }
+
+    public synchronized void invalidate() {
+        mOverlays = null;
+    }
+
+    private synchronized Map<String, OverlayInfo> getOverlays() {
+        if (mOverlays == null) {
+            Map<String, OverlayInfo> overlays = new HashMap<>();
+            try {
+                Map<String, List<OverlayInfo>> byTarget =
+                        mOverlayManager.getAllOverlays(mUserId);
+                for (List<OverlayInfo> infos : byTarget.values()) {
+                    for (OverlayInfo info : infos) {
+                        overlays.put(info.packageName, info);
+                    }
+                }
+            } catch (RemoteException e) {
+                Log.w(TAG, "Failed to query overlays", e);
+                // Don't cache a failed query
+                return Collections.emptyMap();
+            }
+            mOverlays = overlays;
+        }
+        return mOverlays;
+    }
+
+    /**
+     * Returns the overlay's info, or null if it is not installed.
+     */
+    public OverlayInfo getOverlayInfo(String overlay) {
+        return getOverlays().get(overlay);
+    }
+
+    public boolean isEnabled(String overlay) {
+        OverlayInfo info = getOverlayInfo(overlay);
+        return info != null && info.isEnabled();
+    }
+
+    /**
+     * Returns the position of the enabled overlay in {@code category}, or -1 if none
+     * is enabled. If several are, the last one wins.
+     */
+    public int getEnabledIndex(String[] category) {
+        for (int i = category.length - 1; i >= 0; i--) {
+            if (isEnabled(category[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the enabled overlay in {@code category}, or null if none is enabled.
+     */
+    public String getEnabled(String[] category) {
+        int index = getEnabledIndex(category);
+        return index != -1 ? category[index] : null;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide package add/remove/replace listener. Caches that depend on
+ * installed packages register here instead of each holding their own receiver.
+ */
+public final class PackageChangeMonitor {
+
+    public interface Listener {
+        /**
+         * Called on the main thread whenever a package is added, removed,
+         * replaced or changed.
+         */
+        void onPackageChanged(String packageName, String action);
+    }
+
+    private static PackageChangeMonitor sInstance;
+
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            String packageName = data != null ? data.getSchemeSpecificPart() : null;
+            if (packageName == null) {
+                return;
+            }
+            for (Listener listener : mListeners) {
+                listener.onPackageChanged(packageName, intent.getAction());
+            }
+        }
+    };
+
+    private PackageChangeMonitor(Context context) {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        context.registerReceiver(mReceiver, filter);
+    }
+
+    public static synchronized PackageChangeMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PackageChangeMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.pm.PackageManager;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ordered set of package names stored as a {@code ;} separated Settings value, the
+ * format SystemUI reads these lists in. Lookups are hashed and the encoded value is
+ * kept up to date as packages are added, so only removals cost a rebuild, and that
+ * only once the value is asked for again.
+ */
+public final class PackageSet implements Iterable<String> {
+    private static final char SEPARATOR = ';';
+
+    private final LinkedHashSet<String> mPackages = new LinkedHashSet<>();
+    private final StringBuilder mEncoded = new StringBuilder();
+    private boolean mEncodedStale;
+
+    public PackageSet() {
+    }
+
+    public PackageSet(String encoded) {
+        parse(encoded);
+    }
+
+    /**
+     * Replaces the contents with the packages in {@code encoded}, skipping empty
+     * entries and repeats.
+     */
+    public void parse(String encoded) {
+        mPackages.clear();
+        mEncoded.setLength(0);
+        mEncodedStale = false;
+        if (TextUtils.isEmpty(encoded)) {
+            return;
+        }
+        final int length = encoded.length();
+        int start = 0;
+        while (start <= length) {
+            int end = encoded.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                add(encoded.substring(start, end));
+            }
+            start = end + 1;
+        }
+    }
+
+    public boolean contains(String packageName) {
+        return mPackages.contains(packageName);
+    }
+
+    public int size() {
+        return mPackages.size();
+    }
+
+    public boolean isEmpty() {
+        return mPackages.isEmpty();
+    }
+
+    /**
+     * Appends {@code packageName} unless it is already there.
+     *
+     * @return whether the set changed
+     */
+    public boolean add(String packageName) {
+        if (TextUtils.isEmpty(packageName) || !mPackages.add(packageName)) {
+            return false;
+        }
+        if (!mEncodedStale) {
+            if (mEncoded.length() > 0) {
+                mEncoded.append(SEPARATOR);
+            }
+            mEncoded.append(packageName);
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the set changed
+     */
+    public boolean remove(String packageName) {
+        if (!mPackages.remove(packageName)) {
+            return false;
+        }
+        mEncodedStale = true;
+        return true;
+    }
+
+    /**
+     * Drops every package that is no longer installed. Goes to the package manager
+     * once per entry, so call it off the main thread.
+     *
+     * @return the packages that were dropped
+     */
+    public List<String> retainInstalled(PackageManager pm) {
+        List<String> dropped = null;
+        for (Iterator<String> it = mPackages.iterator(); it.hasNext(); ) {
+            final String packageName = it.next();
+            try {
+                pm.getApplicationInfo(packageName, PackageManager.MATCH_UNINSTALLED_PACKAGES);
+            } catch (PackageManager.NameNotFoundException e) {
+                it.remove();
+                if (dropped == null) {
+                    dropped = new ArrayList<>();
+                }
+                dropped.add(packageName);
+            }
+        }
+        if (dropped == null) {
+            return Collections.emptyList();
+        }
+        mEncodedStale = true;
+        return dropped;
+    }
+
+    /**
+     * Read-only view in insertion order.
+     */
+    public Set<String> asSet() {
+        return Collections.unmodifiableSet(mPackages);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return asSet().iterator();
+    }
+
+    /**
+     * Returns the value to store in Settings.
+     */
+    public String encode() {
+        if (mEncodedStale) {
+            mEncoded.setLength(0);
+            for (String packageName : mPackages) {
+                if (mEncoded.length() > 0) {
+                    mEncoded.append(SEPARATOR);
+                }
+                mEncoded.append(packageName);
+            }
+            mEncodedStale = false;
+        }
+        return mEncoded.toString();
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.Context;
+import android.content.res.XmlResourceParser;
+import android.os.SystemClock;
+
+import androidx.preference.PreferenceManager;
+
+import com.android.settings.R;
+
+import com.derpquest.settings.tabs.TabCardModel;
+
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.PrintWriter;
+
+/**
+ * Measures, for every DerpQuest preference screen, how long full inflation takes,
+ * how much of that is spent reading the compiled XML, and how long building the
+ * screen from a cached model takes where one exists. Run through
+ * {@code dumpsys activity <settings activity> --inflation-benchmark}.
+ */
+public final class PreferenceInflationBenchmark {
+    public static final String DUMP_ARG = "--inflation-benchmark";
+
+    private static final int ITERATIONS = 5;
+
+    private static final int[] SCREENS = {
+        R.xml.active_edge, R.xml.always_on_display_schedule, R.xml.ambient_ticker,
+        R.xml.animations, R.xml.battery_bar, R.xml.battery_options,
+        R.xml.battery_tweaks, R.xml.brightness_slider, R.xml.clock_options,
+        R.xml.custom_carrier_label, R.xml.cutout, R.xml.derp_settings_gaming,
+        R.xml.derp_settings_gaming_danmaku, R.xml.derp_settings_gaming_qs_app,
+        R.xml.edge_notifications, R.xml.external_omnijaws_settings, R.xml.fod_general,
+        R.xml.general_notifications, R.xml.gestures, R.xml.gvisual, R.xml.headsup,
+        R.xml.hw_keys, R.xml.led_settings, R.xml.lockscreen_aosp,
+        R.xml.lockscreen_general, R.xml.lockscreen_tuner, R.xml.lockscreen_weather,
+        R.xml.miscellaneous, R.xml.navigation_bar, R.xml.powerbutton,
+        R.xml.pulse_settings, R.xml.qsheader, R.xml.quick_settings,
+        R.xml.sleep_mode_settings, R.xml.smart_pixels, R.xml.status_bar_items,
+        R.xml.statusbar_logo, R.xml.statusbar_ticker, R.xml.tab_actions,
+        R.xml.tab_interface, R.xml.tab_lock_screen, R.xml.tab_status_bar,
+        R.xml.tab_system_misc, R.xml.themer, R.xml.traffic_indicators,
+        R.xml.volume_rocker, R.xml.volume_steps,
+    };
+
+    private PreferenceInflationBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark on the calling thread and prints one line per screen, with
+     * average times over {@value #ITERATIONS} runs after a warm-up run.
+     */
+    public static void run(Context context, String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Preference inflation (avg us): inflate / xml read / cached model");
+        long totalInflate = 0;
+        long totalCached = 0;
+        for (int xmlRes : SCREENS) {
+            final String name = context.getResources().getResourceEntryName(xmlRes);
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(name);
+            writer.print(": ");
+            try {
+                long inflate = measureInflate(context, xmlRes);
+                long read = measureRead(context, xmlRes);
+                long cached = measureCached(context, xmlRes);
+                totalInflate += inflate;
+                writer.print(inflate);
+                writer.print(" / ");
+                writer.print(read);
+                writer.print(" / ");
+                if (cached >= 0) {
+                    totalCached += cached;
+                    writer.println(cached);
+                } else {
+                    writer.println("-");
+                }
+            } catch (RuntimeException e) {
+                // Some preferences can't be created outside their fragment
+                writer.println("failed: " + e);
+            }
+        }
+        writer.print(prefix);
+        writer.println("  total inflate=" + totalInflate + "us cached=" + totalCached + "us");
+    }
+
+    private static long measureInflate(Context context, int xmlRes) {
+        long total = 0;
+        for (int i = 0; i <= ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            new PreferenceManager(context).inflateFromResource(context, xmlRes, null);
+            if (i > 0) {
+                total += SystemClock.elapsedRealtimeNanos() - start;
+            }
+        }
+        return total / ITERATIONS / 1000;
+    }
+
+    /**
+     * Time spent walking the compiled XML alone, the most a parse cache could save.
+     */
+    private static long measureRead(Context context, int xmlRes) {
+        long total = 0;
+        for (int i = 0; i <= ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            try (XmlResourceParser parser = context.getResources().getXml(xmlRes)) {
+                while (parser.next() != XmlPullParser.END_DOCUMENT) {
+                    parser.getAttributeCount();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            if (i > 0) {
+                total += SystemClock.elapsedRealtimeNanos() - start;
+            }
+        }
+        return total / ITERATIONS / 1000;
+    }
+
+    /**
+     * Returns -1 if no model is cached for the screen.
+     */
+    private static long measureCached(Context context, int xmlRes) {
+        long total = 0;
+        for (int i = 0; i <= ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            if (TabCardModel.createCachedScreen(new PreferenceManager(context), xmlRes) == null) {
+                return -1;
+            }
+            if (i > 0) {
+                total += SystemClock.elapsedRealtimeNanos() - start;
+            }
+        }
+        return total / ITERATIONS / 1000;
+    }
+}
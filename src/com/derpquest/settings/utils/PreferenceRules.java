@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.util.ArrayMap;
+import android.util.ArraySet;
+
+import androidx.preference.Preference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enabled states of a screen's preferences, declared once as expressions over
+ * setting keys. The inputs each rule reads are collected from its expression, so
+ * when an input changes only the rules that read it are evaluated again, and a
+ * preference is only touched when its result actually flips.
+ */
+public final class PreferenceRules {
+
+    public interface Target {
+        void apply(boolean value);
+    }
+
+    public abstract static class Expr {
+        abstract boolean eval(Map<String, Integer> values);
+
+        abstract void collectInputs(Set<String> inputs);
+    }
+
+    private static final class Rule {
+        final Expr expr;
+        final Target target;
+        Boolean last;
+
+        Rule(Expr expr, Target target) {
+            this.expr = expr;
+            this.target = target;
+        }
+    }
+
+    private final Map<String, Integer> mValues = new ArrayMap<>();
+    // Input key to the rules reading it
+    private final Map<String, List<Rule>> mDependents = new ArrayMap<>();
+    private final List<Rule> mRules = new ArrayList<>();
+    private boolean mBound;
+
+    /**
+     * True if the value of {@code key} is not 0.
+     */
+    public static Expr isOn(String key) {
+        return not(is(key, 0));
+    }
+
+    public static Expr is(String key, int value) {
+        return new Expr() {
+            @Override
+            boolean eval(Map<String, Integer> values) {
+                return values.get(key) == value;
+            }
+
+            @Override
+            void collectInputs(Set<String> inputs) {
+                inputs.add(key);
+            }
+        };
+    }
+
+    public static Expr not(Expr expr) {
+        return new Expr() {
+            @Override
+            boolean eval(Map<String, Integer> values) {
+                return !expr.eval(values);
+            }
+
+            @Override
+            void collectInputs(Set<String> inputs) {
+                expr.collectInputs(inputs);
+            }
+        };
+    }
+
+    public static Expr anyOf(Expr... exprs) {
+        return combine(exprs, true);
+    }
+
+    public static Expr allOf(Expr... exprs) {
+        return combine(exprs, false);
+    }
+
+    private static Expr combine(Expr[] exprs, boolean any) {
+        return new Expr() {
+            @Override
+            boolean eval(Map<String, Integer> values) {
+                for (Expr expr : exprs) {
+                    if (expr.eval(values) == any) {
+                        return any;
+                    }
+                }
+                return !any;
+            }
+
+            @Override
+            void collectInputs(Set<String> inputs) {
+                for (Expr expr : exprs) {
+                    expr.collectInputs(inputs);
+                }
+            }
+        };
+    }
+
+    /**
+     * Sets the initial value of an input. Every input used by a rule must be
+     * defined before {@link #bind}.
+     */
+    public PreferenceRules define(String key, int value) {
+        mValues.put(key, value);
+        return this;
+    }
+
+    public PreferenceRules enableWhen(Expr expr, Preference... prefs) {
+        for (Preference pref : prefs) {
+            if (pref != null) {
+                when(expr, pref::setEnabled);
+            }
+        }
+        return this;
+    }
+
+    public PreferenceRules when(Expr expr, Target target) {
+        final Rule rule = new Rule(expr, target);
+        final Set<String> inputs = new ArraySet<>();
+        expr.collectInputs(inputs);
+        for (String input : inputs) {
+            List<Rule> dependents = mDependents.get(input);
+            if (dependents == null) {
+                dependents = new ArrayList<>();
+                mDependents.put(input, dependents);
+            }
+            dependents.add(rule);
+        }
+        mRules.add(rule);
+        return this;
+    }
+
+    /**
+     * Applies every rule once. Later changes only go through {@link #set}.
+     */
+    public void bind() {
+        for (String input : mDependents.keySet()) {
+            if (!mValues.containsKey(input)) {
+                throw new IllegalStateException(input + " was not defined");
+            }
+        }
+        mBound = true;
+        for (Rule rule : mRules) {
+            apply(rule);
+        }
+    }
+
+    public void set(String key, boolean value) {
+        set(key, value ? 1 : 0);
+    }
+
+    public void set(String key, int value) {
+        final Integer old = mValues.put(key, value);
+        if (!mBound || (old != null && old == value)) {
+            return;
+        }
+        final List<Rule> dependents = mDependents.get(key);
+        if (dependents != null) {
+            for (Rule rule : dependents) {
+                apply(rule);
+            }
+        }
+    }
+
+    private void apply(Rule rule) {
+        final boolean value = rule.expr.eval(mValues);
+        if (rule.last == null || rule.last != value) {
+            rule.last = value;
+            rule.target.apply(value);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.app.Activity;
+import android.app.ActivityThread;
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.IContentProvider;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.SystemProperties;
+import android.provider.Settings;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+import androidx.preference.PreferenceFragmentCompat;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records how long each DerpQuest screen takes from creation to its first frame,
+ * along with the binder calls it makes on the main thread, into a small ring buffer.
+ * Screens are picked up through fragment lifecycle callbacks, so they don't need
+ * any code of their own. Completed traces are logged when the tag is loggable at
+ * DEBUG and can be read back with {@code dumpsys activity}.
+ *
+ * <p>Counting binder calls takes over the process wide proxy transaction listener,
+ * so tracing is only on for eng builds or with {@link #PROP_ENABLED} set.
+ */
+public final class ScreenTracer {
+    private static final String TAG = "ScreenTracer";
+
+    private static final String PROP_ENABLED = "debug.derpquest.screen_trace";
+    private static final String PACKAGE_PREFIX = "com.derpquest.settings.";
+    private static final int CAPACITY = 64;
+
+    public static final class Record {
+        public final String screen;
+        public final long wallTime;
+        final long startUptime;
+        public long createMs = -1;
+        public long viewMs = -1;
+        public long firstFrameMs = -1;
+        public int settingsCalls;
+        public int packageManagerCalls;
+        public int binderCalls;
+
+        Record(String screen) {
+            this.screen = screen;
+            this.wallTime = System.currentTimeMillis();
+            this.startUptime = SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public String toString() {
+            return screen + " create=" + createMs + "ms view=" + viewMs
+                    + "ms firstFrame=" + firstFrameMs + "ms settings=" + settingsCalls
+                    + " pm=" + packageManagerCalls + " binder=" + binderCalls;
+        }
+    }
+
+    private static boolean sInstalled;
+    private static IBinder sSettingsBinder;
+    private static IBinder sPackageManagerBinder;
+
+    // Traces of screens that haven't drawn yet, in the order they were opened, and
+    // the latest of them. Main thread only.
+    private static final Map<Fragment, Record> sOpen = new LinkedHashMap<>();
+    private static Record sInnermost;
+    private static final ArrayDeque<Record> sRecords = new ArrayDeque<>(CAPACITY);
+
+    private static final Binder.ProxyTransactListener sTransactListener =
+            new Binder.ProxyTransactListener() {
+        @Override
+        public Object onTransactStarted(IBinder binder, int transactionCode) {
+            final Record record = sInnermost;
+            if (record == null || Looper.myLooper() != Looper.getMainLooper()) {
+                return null;
+            }
+            // Nested screens are created by the innermost one, it gets the call
+            record.binderCalls++;
+            if (binder == sSettingsBinder) {
+                record.settingsCalls++;
+            } else if (binder == sPackageManagerBinder) {
+                record.packageManagerCalls++;
+            }
+            return null;
+        }
+
+        @Override
+        public void onTransactEnded(Object session) {
+        }
+    };
+
+    private static final FragmentManager.FragmentLifecycleCallbacks sFragmentCallbacks =
+            new FragmentManager.FragmentLifecycleCallbacks() {
+        @Override
+        public void onFragmentPreCreated(FragmentManager fm, Fragment f, Bundle savedState) {
+            if (isTraced(f)) {
+                sInnermost = new Record(f.getClass().getSimpleName());
+                sOpen.put(f, sInnermost);
+            }
+        }
+
+        @Override
+        public void onFragmentCreated(FragmentManager fm, Fragment f, Bundle savedState) {
+            Record record = sOpen.get(f);
+            if (record != null) {
+                record.createMs = SystemClock.uptimeMillis() - record.startUptime;
+            }
+        }
+
+        @Override
+        public void onFragmentViewCreated(FragmentManager fm, Fragment f, View v,
+                Bundle savedState) {
+            final Record record = sOpen.get(f);
+            if (record == null) {
+                return;
+            }
+            record.viewMs = SystemClock.uptimeMillis() - record.startUptime - record.createMs;
+            v.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    v.getViewTreeObserver().removeOnPreDrawListener(this);
+                    // Posted from pre-draw, so this runs once the frame is out
+                    v.post(() -> {
+                        if (sOpen.get(f) == record) {
+                            record.firstFrameMs = SystemClock.uptimeMillis() - record.startUptime;
+                            finish(f);
+                        }
+                    });
+                    return true;
+                }
+            });
+        }
+
+        @Override
+        public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+            // Gone before its first frame, keep what was measured
+            finish(f);
+        }
+    };
+
+    private static final Application.ActivityLifecycleCallbacks sActivityCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            register(activity);
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    };
+
+    private ScreenTracer() {
+    }
+
+    /**
+     * Starts tracing screens in {@code activity} and in every activity created after
+     * it, if tracing is enabled. Must be called on the main thread, before the
+     * caller's own onCreate to have it traced as well.
+     */
+    public static void install(Activity activity) {
+        if (sInstalled || !isEnabled()) {
+            return;
+        }
+        sInstalled = true;
+        resolveBinders(activity);
+        // Replaces any process wide listener already set, hence the eng build or
+        // debug property gate in isEnabled()
+        Binder.setProxyTransactListener(sTransactListener);
+        activity.getApplication().registerActivityLifecycleCallbacks(sActivityCallbacks);
+        register(activity);
+    }
+
+    /**
+     * Returns the completed traces, oldest first.
+     */
+    public static List<Record> getRecords() {
+        synchronized (sRecords) {
+            return new ArrayList<>(sRecords);
+        }
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        final SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        writer.print(prefix);
+        writer.println("Screen traces:");
+        for (Record record : getRecords()) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(format.format(new Date(record.wallTime)));
+            writer.print(' ');
+            writer.println(record);
+        }
+    }
+
+    private static boolean isEnabled() {
+        return Build.IS_ENG || SystemProperties.getBoolean(PROP_ENABLED, false);
+    }
+
+    private static void register(Activity activity) {
+        if (activity instanceof FragmentActivity) {
+            ((FragmentActivity) activity).getSupportFragmentManager()
+                    .registerFragmentLifecycleCallbacks(sFragmentCallbacks, true);
+        }
+    }
+
+    private static boolean isTraced(Fragment f) {
+        return f instanceof PreferenceFragmentCompat
+                && f.getClass().getName().startsWith(PACKAGE_PREFIX);
+    }
+
+    private static void resolveBinders(Context context) {
+        try {
+            sPackageManagerBinder = ActivityThread.getPackageManager().asBinder();
+            ContentResolver resolver = context.getContentResolver();
+            IContentProvider provider = resolver.acquireProvider(Settings.AUTHORITY);
+            if (provider != null) {
+                sSettingsBinder = provider.asBinder();
+                resolver.releaseProvider(provider);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Binder calls won't be attributed", e);
+        }
+    }
+
+    private static void finish(Fragment f) {
+        Record record = sOpen.remove(f);
+        if (record == null) {
+            return;
+        }
+        if (record == sInnermost) {
+            sInnermost = null;
+            for (Record open : sOpen.values()) {
+                sInnermost = open;
+            }
+        }
+        synchronized (sRecords) {
+            if (sRecords.size() == CAPACITY) {
+                sRecords.removeFirst();
+            }
+            sRecords.addLast(record);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, record.toString());
+        }
+    }
+}
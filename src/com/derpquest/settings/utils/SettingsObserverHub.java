@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide owner of the content observers screens use. Each URI is registered
+ * with the platform once however many screens follow it, subscriptions end with
+ * their lifecycle owner, and change bursts are collected on a background thread so
+ * subscribers see one callback per changed URI.
+ */
+public final class SettingsObserverHub {
+    private static final String TAG = "SettingsObserverHub";
+
+    private static final long COALESCE_MS = 50;
+
+    public interface Callback {
+        /**
+         * Called on the main thread.
+         */
+        void onChange(Uri uri);
+    }
+
+    private static SettingsObserverHub sInstance;
+
+    private final ContentResolver mResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Handler mBackgroundHandler;
+    // Registration key to registration. Main thread only.
+    private final Map<String, Registration> mRegistrations = new ArrayMap<>();
+
+    private SettingsObserverHub(Context context) {
+        mResolver = context.getContentResolver();
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mBackgroundHandler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized SettingsObserverHub getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SettingsObserverHub(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Follows {@code uri} for all users until {@code owner} is destroyed.
+     */
+    public Subscription observe(LifecycleOwner owner, Uri uri, Callback callback) {
+        return observe(owner, uri, false, UserHandle.USER_ALL, callback);
+    }
+
+    /**
+     * Follows {@code uri} until {@code owner} is destroyed, or until the returned
+     * subscription is closed if {@code owner} is null. Subscribing the same callback
+     * to the same URI twice for one owner returns the existing subscription.
+     * Must be called on the main thread.
+     */
+    public Subscription observe(LifecycleOwner owner, Uri uri, boolean descendants,
+            int userHandle, Callback callback) {
+        final String key = uri + "|" + descendants + "|" + userHandle;
+        Registration registration = mRegistrations.get(key);
+        if (registration == null) {
+            registration = new Registration(key);
+            mRegistrations.put(key, registration);
+            mResolver.registerContentObserver(uri, descendants, registration.mObserver,
+                    userHandle);
+        } else {
+            for (Subscription existing : registration.mSubscriptions) {
+                if (existing.mOwner == owner && existing.mCallback == callback && owner != null) {
+                    return existing;
+                }
+            }
+        }
+        final Subscription subscription = new Subscription(registration, owner, callback);
+        registration.mSubscriptions.add(subscription);
+        if (owner != null) {
+            owner.getLifecycle().addObserver(subscription);
+        }
+        return subscription;
+    }
+
+    private void remove(Subscription subscription) {
+        final Registration registration = subscription.mRegistration;
+        if (!registration.mSubscriptions.remove(subscription)) {
+            return;
+        }
+        if (registration.mSubscriptions.isEmpty()) {
+            mRegistrations.remove(registration.mKey);
+            mResolver.unregisterContentObserver(registration.mObserver);
+        }
+    }
+
+    public final class Subscription implements LifecycleEventObserver {
+        private final Registration mRegistration;
+        private final LifecycleOwner mOwner;
+        private final Callback mCallback;
+
+        private Subscription(Registration registration, LifecycleOwner owner,
+                Callback callback) {
+            mRegistration = registration;
+            mOwner = owner;
+            mCallback = callback;
+        }
+
+        @Override
+        public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                close();
+            }
+        }
+
+        /**
+         * Ends the subscription. Must be called on the main thread.
+         */
+        public void close() {
+            if (mOwner != null) {
+                mOwner.getLifecycle().removeObserver(this);
+            }
+            remove(this);
+        }
+    }
+
+    private final class Registration {
+        final String mKey;
+        final List<Subscription> mSubscriptions = new ArrayList<>();
+        // URIs changed since the last dispatch. Guarded by itself.
+        final Set<Uri> mPending = new ArraySet<>();
+
+        final ContentObserver mObserver = new ContentObserver(mBackgroundHandler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                synchronized (mPending) {
+                    if (!mPending.isEmpty()) {
+                        // A dispatch is already scheduled
+                        mPending.add(uri);
+                        return;
+                    }
+                    mPending.add(uri);
+                }
+                mBackgroundHandler.postDelayed(Registration.this::flush, COALESCE_MS);
+            }
+        };
+
+        Registration(String key) {
+            mKey = key;
+        }
+
+        private void flush() {
+            final List<Uri> uris;
+            synchronized (mPending) {
+                uris = new ArrayList<>(mPending);
+                mPending.clear();
+            }
+            mMainHandler.post(() -> {
+                // Copy, callbacks may close their subscription
+                for (Subscription subscription : new ArrayList<>(mSubscriptions)) {
+                    for (Uri uri : uris) {
+                        subscription.mCallback.onChange(uri);
+                    }
+                }
+            });
+        }
+    }
+}
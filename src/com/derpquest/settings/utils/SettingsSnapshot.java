@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.provider.Settings;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Values of the Settings keys a screen declares, read with a single provider query
+ * instead of one call per key. The values are kept current by one observer on the
+ * table until {@link #close} is called, and writes made through the snapshot are
+ * visible to it right away.
+ */
+public final class SettingsSnapshot {
+    private static final String TAG = "SettingsSnapshot";
+
+    public interface OnChangeListener {
+        /**
+         * Called on the main thread when a declared key changed outside the snapshot.
+         */
+        void onSettingChanged(String key);
+    }
+
+    private final ContentResolver mResolver;
+    private final int mTable;
+    private final Uri mTableUri;
+    private final Set<String> mKeys = new ArraySet<>();
+    private int mUserId = UserHandle.myUserId();
+
+    private volatile Map<String, String> mValues;
+    // Set if the table query failed, values are then read one by one
+    private boolean mDirectReads;
+    private boolean mObserving;
+    private OnChangeListener mListener;
+
+    private final ContentObserver mObserver = new ContentObserver(
+            new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            final String key = uri != null ? uri.getLastPathSegment() : null;
+            if (key == null) {
+                reload();
+                return;
+            }
+            if (!mKeys.contains(key)) {
+                return;
+            }
+            update(key, read(key));
+            if (mListener != null) {
+                mListener.onSettingChanged(key);
+            }
+        }
+    };
+
+    private SettingsSnapshot(ContentResolver resolver, int table, String[] keys) {
+        mResolver = resolver;
+        mTable = table;
+        mTableUri = table == SettingsTransaction.TABLE_SECURE
+                ? Settings.Secure.CONTENT_URI : Settings.System.CONTENT_URI;
+        Collections.addAll(mKeys, keys);
+    }
+
+    public static SettingsSnapshot system(ContentResolver resolver, String... keys) {
+        return new SettingsSnapshot(resolver, SettingsTransaction.TABLE_SYSTEM, keys);
+    }
+
+    public static SettingsSnapshot secure(ContentResolver resolver, String... keys) {
+        return new SettingsSnapshot(resolver, SettingsTransaction.TABLE_SECURE, keys);
+    }
+
+    /**
+     * Must be called before the first read.
+     */
+    public SettingsSnapshot forUser(int userId) {
+        mUserId = userId;
+        return this;
+    }
+
+    public SettingsSnapshot setOnChangeListener(OnChangeListener listener) {
+        mListener = listener;
+        return this;
+    }
+
+    public String getString(String key) {
+        if (!mKeys.contains(key)) {
+            throw new IllegalArgumentException(key + " was not declared");
+        }
+        ensureLoaded();
+        return mDirectReads ? read(key) : mValues.get(key);
+    }
+
+    public int getInt(String key, int def) {
+        final String value = getString(key);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public float getFloat(String key, float def) {
+        final String value = getString(key);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /**
+     * Writes through to Settings on the calling thread.
+     */
+    public boolean putInt(String key, int value) {
+        return putString(key, Integer.toString(value));
+    }
+
+    public boolean putString(String key, String value) {
+        if (!mKeys.contains(key)) {
+            throw new IllegalArgumentException(key + " was not declared");
+        }
+        final boolean written = mTable == SettingsTransaction.TABLE_SECURE
+                ? Settings.Secure.putStringForUser(mResolver, key, value, mUserId)
+                : Settings.System.putStringForUser(mResolver, key, value, mUserId);
+        if (written && mValues != null) {
+            update(key, value);
+        }
+        return written;
+    }
+
+    /**
+     * Stops following changes. Reads afterwards return the last known values.
+     */
+    public void close() {
+        if (mObserving) {
+            mResolver.unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (mValues != null) {
+            return;
+        }
+        // Observe first so nothing written between query and registration is missed
+        mResolver.registerContentObserver(mTableUri, true, mObserver, mUserId);
+        mObserving = true;
+        reload();
+    }
+
+    private void reload() {
+        final Map<String, String> values = new ArrayMap<>();
+        final String[] projection = { Settings.NameValueTable.NAME, Settings.NameValueTable.VALUE };
+        try (Cursor cursor = mResolver.query(ContentProvider.maybeAddUserId(mTableUri, mUserId),
+                projection, null, null, null)) {
+            if (cursor == null) {
+                throw new IllegalStateException("No cursor for " + mTableUri);
+            }
+            while (cursor.moveToNext()) {
+                final String name = cursor.getString(0);
+                if (mKeys.contains(name)) {
+                    values.put(name, cursor.getString(1));
+                }
+            }
+            mDirectReads = false;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Falling back to per-key reads of " + mTableUri, e);
+            mDirectReads = true;
+        }
+        mValues = Collections.unmodifiableMap(values);
+    }
+
+    private void update(String key, String value) {
+        final Map<String, String> values = new ArrayMap<>(mValues);
+        values.put(key, value);
+        mValues = Collections.unmodifiableMap(values);
+    }
+
+    private String read(String key) {
+        return mTable == SettingsTransaction.TABLE_SECURE
+                ? Settings.Secure.getStringForUser(mResolver, key, mUserId)
+                : Settings.System.getStringForUser(mResolver, key, mUserId);
+    }
+}
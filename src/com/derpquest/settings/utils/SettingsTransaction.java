@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.ContentResolver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Groups related Settings writes and commits them together on a background thread.
+ * Repeated writes to the same key are coalesced and writes that would not change
+ * the stored value are dropped, so observers only hear about real changes.
+ */
+public final class SettingsTransaction {
+    private static final String TAG = "SettingsTransaction";
+
+    public static final int TABLE_SYSTEM = 0;
+    public static final int TABLE_SECURE = 1;
+
+    public interface OnCommittedListener {
+        /**
+         * Called on the main thread once the transaction has been committed.
+         *
+         * @param writes number of keys that were actually written
+         * @param latencyMs time from {@link #commit} to the last write
+         */
+        void onCommitted(int writes, long latencyMs);
+    }
+
+    // Single thread so transactions land in the order they were committed
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ContentResolver mResolver;
+    private final int mTable;
+    private int mUserId = UserHandle.myUserId();
+    private final Map<String, String> mWrites = new LinkedHashMap<>();
+
+    private SettingsTransaction(ContentResolver resolver, int table) {
+        mResolver = resolver;
+        mTable = table;
+    }
+
+    public static SettingsTransaction system(ContentResolver resolver) {
+        return new SettingsTransaction(resolver, TABLE_SYSTEM);
+    }
+
+    public static SettingsTransaction secure(ContentResolver resolver) {
+        return new SettingsTransaction(resolver, TABLE_SECURE);
+    }
+
+    public SettingsTransaction forUser(int userId) {
+        mUserId = userId;
+        return this;
+    }
+
+    public SettingsTransaction putInt(String key, int value) {
+        return putString(key, Integer.toString(value));
+    }
+
+    public SettingsTransaction putLong(String key, long value) {
+        return putString(key, Long.toString(value));
+    }
+
+    public SettingsTransaction putFloat(String key, float value) {
+        return putString(key, Float.toString(value));
+    }
+
+    public SettingsTransaction putBoolean(String key, boolean value) {
+        return putInt(key, value ? 1 : 0);
+    }
+
+    public SettingsTransaction putString(String key, String value) {
+        // Last write wins
+        mWrites.put(key, value);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return mWrites.isEmpty();
+    }
+
+    public void commit() {
+        commit(null);
+    }
+
+    public void commit(OnCommittedListener listener) {
+        if (mWrites.isEmpty()) {
+            return;
+        }
+        final long start = SystemClock.elapsedRealtime();
+        final Map<String, String> writes = new LinkedHashMap<>(mWrites);
+        mWrites.clear();
+        sExecutor.execute(() -> {
+            int written = 0;
+            for (Map.Entry<String, String> write : writes.entrySet()) {
+                if (apply(write.getKey(), write.getValue())) {
+                    written++;
+                }
+            }
+            final int count = written;
+            final long latency = SystemClock.elapsedRealtime() - start;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Committed " + count + "/" + writes.size() + " writes in "
+                        + latency + "ms");
+            }
+            if (listener != null) {
+                sMainHandler.post(() -> listener.onCommitted(count, latency));
+            }
+        });
+    }
+
+    /**
+     * Commits on the calling thread. Only for callers that are already off the main
+     * thread and need the values in place before they continue.
+     */
+    public int commitNow() {
+        int written = 0;
+        for (Map.Entry<String, String> write : mWrites.entrySet()) {
+            if (apply(write.getKey(), write.getValue())) {
+                written++;
+            }
+        }
+        mWrites.clear();
+        return written;
+    }
+
+    private boolean apply(String key, String value) {
+        final String current = mTable == TABLE_SECURE
+                ? Settings.Secure.getStringForUser(mResolver, key, mUserId)
+                : Settings.System.getStringForUser(mResolver, key, mUserId);
+        if (TextUtils.equals(current, value)) {
+            return false;
+        }
+        return mTable == TABLE_SECURE
+                ? Settings.Secure.putStringForUser(mResolver, key, value, mUserId)
+                : Settings.System.putStringForUser(mResolver, key, value, mUserId);
+    }
+}
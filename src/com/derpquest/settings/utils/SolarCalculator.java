@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.settings.R;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sunrise and sunset times computed on the device from the last known coarse
+ * location, so twilight schedules can show real times without asking a service.
+ * Results are cached per day and per 0.1 degree location cell, a few kilometres,
+ * which keeps them within a minute of the exact position.
+ */
+public final class SolarCalculator {
+    private static final String TAG = "SolarCalculator";
+
+    private static final double CELLS_PER_DEGREE = 10;
+    private static final int CACHE_SIZE = 8;
+    private static final long LOCATION_MAX_AGE_MS = 60 * 60 * 1000;
+
+    private static final double J2000 = 2451545.0;
+    private static final double UNIX_EPOCH_JULIAN_DAY = 2440587.5;
+    private static final long EPOCH_DAY_J2000 = 10957;
+    private static final double OBLIQUITY = Math.toRadians(23.44);
+    // Refraction and the solar disc radius, the sun is up once its top edge shows
+    private static final double SUN_ALTITUDE = Math.toRadians(-0.833);
+    private static final double MS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    /**
+     * Sunrise and sunset of one day, in milliseconds since the epoch, or -1 where
+     * the sun doesn't rise or set that day.
+     */
+    public static final class SunTimes {
+        public final long sunrise;
+        public final long sunset;
+
+        SunTimes(long sunrise, long sunset) {
+            this.sunrise = sunrise;
+            this.sunset = sunset;
+        }
+
+        public LocalTime getSunrise(ZoneId zone) {
+            return toLocalTime(sunrise, zone);
+        }
+
+        public LocalTime getSunset(ZoneId zone) {
+            return toLocalTime(sunset, zone);
+        }
+
+        private static LocalTime toLocalTime(long millis, ZoneId zone) {
+            return millis < 0 ? null
+                    : Instant.ofEpochMilli(millis).atZone(zone).toLocalTime();
+        }
+    }
+
+    private static final Map<String, SunTimes> sCache =
+            new LinkedHashMap<String, SunTimes>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SunTimes> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static Location sLocation;
+    private static long sLocationTime;
+
+    private SolarCalculator() {
+    }
+
+    /**
+     * Returns today's sun times at the last known location, or null if no location
+     * is known. Only the location lookup talks to a service, at most once an hour.
+     */
+    public static SunTimes getToday(Context context) {
+        final Location location = getLastLocation(context);
+        if (location == null) {
+            return null;
+        }
+        final long epochDay = LocalDate.now().toEpochDay();
+        final long latCell = Math.round(location.getLatitude() * CELLS_PER_DEGREE);
+        final long lonCell = Math.round(location.getLongitude() * CELLS_PER_DEGREE);
+        final String key = epochDay + ":" + latCell + ":" + lonCell;
+        synchronized (sCache) {
+            SunTimes times = sCache.get(key);
+            if (times == null) {
+                times = compute(epochDay, latCell / CELLS_PER_DEGREE, lonCell / CELLS_PER_DEGREE);
+                sCache.put(key, times);
+            }
+            return times;
+        }
+    }
+
+    /**
+     * Returns the label of a sun event followed by its time when it is known, e.g.
+     * "Sunset (18:42)".
+     */
+    public static String formatEvent(Context context, int labelRes, LocalTime time,
+            boolean is24Hour) {
+        final String label = context.getString(labelRes);
+        return time == null ? label : context.getString(R.string.schedule_sun_time, label,
+                AutoSchedule.format(time, is24Hour));
+    }
+
+    /**
+     * Computes the sun times of a day with the sunrise equation. Latitude and
+     * longitude are in degrees, east and north positive.
+     */
+    public static SunTimes compute(long epochDay, double latitude, double longitude) {
+        final double meanSolarTime = (epochDay - EPOCH_DAY_J2000) - longitude / 360;
+        final double anomaly = Math.toRadians(normalize(357.5291 + 0.98560028 * meanSolarTime));
+        final double center = 1.9148 * Math.sin(anomaly) + 0.02 * Math.sin(2 * anomaly)
+                + 0.0003 * Math.sin(3 * anomaly);
+        final double eclipticLongitude = Math.toRadians(
+                normalize(Math.toDegrees(anomaly) + center + 180 + 102.9372));
+        final double transit = J2000 + meanSolarTime + 0.0053 * Math.sin(anomaly)
+                - 0.0069 * Math.sin(2 * eclipticLongitude);
+        final double declination = Math.asin(Math.sin(eclipticLongitude) * Math.sin(OBLIQUITY));
+        final double lat = Math.toRadians(latitude);
+        final double cosHourAngle = (Math.sin(SUN_ALTITUDE) - Math.sin(lat) * Math.sin(declination))
+                / (Math.cos(lat) * Math.cos(declination));
+        if (cosHourAngle > 1 || cosHourAngle < -1) {
+            // Polar night or midnight sun
+            return new SunTimes(-1, -1);
+        }
+        final double hourAngle = Math.toDegrees(Math.acos(cosHourAngle)) / 360;
+        return new SunTimes(toMillis(transit - hourAngle), toMillis(transit + hourAngle));
+    }
+
+    private static double normalize(double degrees) {
+        final double value = degrees % 360;
+        return value < 0 ? value + 360 : value;
+    }
+
+    private static long toMillis(double julianDay) {
+        return Math.round((julianDay - UNIX_EPOCH_JULIAN_DAY) * MS_PER_DAY);
+    }
+
+    private static synchronized Location getLastLocation(Context context) {
+        final long now = SystemClock.elapsedRealtime();
+        if (sLocationTime != 0 && now - sLocationTime < LOCATION_MAX_AGE_MS) {
+            return sLocation;
+        }
+        final LocationManager lm = context.getSystemService(LocationManager.class);
+        try {
+            Location location = lm.getLastKnownLocation(LocationManager.PASSIVE_PROVIDER);
+            if (location == null) {
+                location = lm.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
+            }
+            if (location != null) {
+                // Only a real fix is kept for the hour, misses are asked again
+                sLocation = location;
+                sLocationTime = now;
+            }
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.w(TAG, "No location for sun times", e);
+        }
+        return sLocation;
+    }
+}
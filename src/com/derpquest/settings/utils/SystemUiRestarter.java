@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2021 DerpFest
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.derpquest.settings.utils;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.android.settings.R;
+
+import java.io.PrintWriter;
+
+/**
+ * Collects SystemUI restart requests and restarts it once for all of them, after
+ * a quiet period without new requests or as soon as the user leaves Settings,
+ * whichever comes first. The restart itself kills SystemUI by its known uid and
+ * then watches for the new process to measure how long it takes to come back.
+ */
+public final class SystemUiRestarter {
+    private static final String TAG = "SystemUiRestarter";
+
+    private static final String SYSTEMUI_PACKAGE = "com.android.systemui";
+    private static final long QUIET_PERIOD_MS = 3000;
+    private static final long POLL_INTERVAL_MS = 50;
+    private static final long POLL_TIMEOUT_MS = 15000;
+
+    private static SystemUiRestarter sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Runnable mRestartRunnable = this::restart;
+
+    // Main thread only
+    private boolean mTrackingActivities;
+    private int mStartedActivities;
+    // Guarded by this
+    private int mPendingRequests;
+    private long mLastRestartMs = -1;
+    private int mLastRestartRequests;
+
+    private final Application.ActivityLifecycleCallbacks mActivityCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            mStartedActivities++;
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            // A recreate for a configuration change starts the activity right again
+            if (--mStartedActivities == 0 && !activity.isChangingConfigurations()) {
+                // Left Settings, no need to wait any longer
+                flush();
+            }
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    };
+
+    private SystemUiRestarter(Context context) {
+        mContext = context;
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Leaving Settings is only noticed once this has been called with a started
+     * activity, on its main thread. Other contexts fall back to the quiet period.
+     */
+    public static synchronized SystemUiRestarter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SystemUiRestarter(context.getApplicationContext());
+        }
+        if (context instanceof Activity && !sInstance.mTrackingActivities) {
+            sInstance.mTrackingActivities = true;
+            // The caller is started, those before it don't matter
+            sInstance.mStartedActivities = 1;
+            ((Activity) context).getApplication()
+                    .registerActivityLifecycleCallbacks(sInstance.mActivityCallbacks);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Asks for a SystemUI restart. The user is told once per batch of requests.
+     */
+    public void requestRestart() {
+        final boolean first;
+        synchronized (this) {
+            first = mPendingRequests++ == 0;
+        }
+        if (first) {
+            Toast.makeText(mContext, R.string.systemui_restart_toast, Toast.LENGTH_LONG).show();
+        }
+        mHandler.removeCallbacks(mRestartRunnable);
+        mHandler.postDelayed(mRestartRunnable, QUIET_PERIOD_MS);
+    }
+
+    /**
+     * Restarts right away if a restart is pending.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (mPendingRequests == 0) {
+                return;
+            }
+        }
+        mHandler.removeCallbacks(mRestartRunnable);
+        mHandler.post(mRestartRunnable);
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        final SystemUiRestarter restarter;
+        synchronized (SystemUiRestarter.class) {
+            restarter = sInstance;
+        }
+        if (restarter == null) {
+            return;
+        }
+        synchronized (restarter) {
+            writer.print(prefix);
+            writer.println("SystemUI restarts: pending=" + restarter.mPendingRequests
+                    + " last=" + restarter.mLastRestartMs + "ms for "
+                    + restarter.mLastRestartRequests + " request(s)");
+        }
+    }
+
+    private void restart() {
+        final int requests;
+        synchronized (this) {
+            requests = mPendingRequests;
+            mPendingRequests = 0;
+        }
+        if (requests == 0) {
+            return;
+        }
+        final int oldPid = findPid();
+        final long start = SystemClock.elapsedRealtime();
+        try {
+            // SystemUI runs as the system user whichever user Settings runs as
+            final int uid = mContext.getPackageManager().getPackageUidAsUser(SYSTEMUI_PACKAGE,
+                    UserHandle.USER_SYSTEM);
+            ActivityManager.getService().killApplicationProcess(SYSTEMUI_PACKAGE, uid);
+        } catch (PackageManager.NameNotFoundException | RemoteException e) {
+            Log.e(TAG, "Failed to restart SystemUI", e);
+            return;
+        }
+        pollRestarted(oldPid, start, requests);
+    }
+
+    private void pollRestarted(int oldPid, long start, int requests) {
+        final int pid = findPid();
+        final long elapsed = SystemClock.elapsedRealtime() - start;
+        if (pid > 0 && pid != oldPid) {
+            synchronized (this) {
+                mLastRestartMs = elapsed;
+                mLastRestartRequests = requests;
+            }
+            Log.i(TAG, "SystemUI back after " + elapsed + "ms, restarted for "
+                    + requests + " request(s)");
+        } else if (elapsed < POLL_TIMEOUT_MS) {
+            mHandler.postDelayed(() -> pollRestarted(oldPid, start, requests), POLL_INTERVAL_MS);
+        } else {
+            Log.w(TAG, "SystemUI not back after " + elapsed + "ms");
+        }
+    }
+
+    private static int findPid() {
+        final int[] pids = Process.getPidsForCommands(new String[] { SYSTEMUI_PACKAGE });
+        return pids != null && pids.length > 0 ? pids[0] : -1;
+    }
+}
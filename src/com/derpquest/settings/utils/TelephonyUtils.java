@@ -1,7 +1,6 @@
 package com.derpquest.settings.utils;
 
 import android.content.Context;
-import android.telephony.TelephonyManager;
 
 public class TelephonyUtils {
 
@@ -11,8 +10,6 @@ public class TelephonyUtils {
      * Returns whether the device is voice-capable (meaning, it is also a phone).
      */
     public static boolean isVoiceCapable(Context context) {
-        TelephonyManager telephony =
-                (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
-        return telephony != null && telephony.isVoiceCapable();
+        return DeviceCapabilities.getInstance(context).isVoiceCapable();
     }
 }
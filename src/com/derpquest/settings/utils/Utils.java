@@ -17,9 +17,7 @@
 package com.derpquest.settings.utils;
 
 import android.app.Activity;
-import android.app.ActivityManager;
 import android.app.AlertDialog; 
-import android.app.IActivityManager;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.pm.ActivityInfo;
@@ -31,47 +29,24 @@ import android.content.pm.Signature;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.Resources.NotFoundException;
-import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraManager;
-import android.net.ConnectivityManager;
-import android.os.AsyncTask;
 import android.os.UserManager;
-import android.os.SystemProperties;
-import android.telephony.TelephonyManager;
-import android.util.DisplayMetrics;
 import android.util.TypedValue;
-import android.view.DisplayInfo;
 import android.view.Surface;
-import android.view.WindowManager;
-import android.widget.Toast;
 
 import com.android.settings.R;
 
 public final class Utils {
     private static final String TAG = "DerpQuestUtils";
 
-    // Device types
-    private static final int DEVICE_PHONE = 0;
-    private static final int DEVICE_HYBRID = 1;
-    private static final int DEVICE_TABLET = 2;
-
-    // Device type reference
-    private static int sDeviceType = -1;
-
     /**
      * Returns whether the device is voice-capable (meaning, it is also a phone).
      */
     public static boolean isVoiceCapable(Context context) {
-        TelephonyManager telephony =
-                (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
-        return telephony != null && telephony.isVoiceCapable();
+        return DeviceCapabilities.getInstance(context).isVoiceCapable();
     }
 
     public static boolean isWifiOnly(Context context) {
-        ConnectivityManager cm = (ConnectivityManager)context.getSystemService(
-                Context.CONNECTIVITY_SERVICE);
-        return (cm.isNetworkSupported(ConnectivityManager.TYPE_MOBILE) == false);
+        return DeviceCapabilities.getInstance(context).isWifiOnly();
     }
 
     public static boolean hasMultipleUsers(Context context) {
@@ -79,38 +54,19 @@ public final class Utils {
                 .getUsers().size() > 1;
     }
 
-    private static int getScreenType(Context context) {
-        if (sDeviceType == -1) {
-            WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
-           DisplayInfo outDisplayInfo = new DisplayInfo();
-            wm.getDefaultDisplay().getDisplayInfo(outDisplayInfo);
-            int shortSize = Math.min(outDisplayInfo.logicalHeight, outDisplayInfo.logicalWidth);
-            int shortSizeDp = shortSize * DisplayMetrics.DENSITY_DEFAULT
-                    / outDisplayInfo.logicalDensityDpi;
-            if (shortSizeDp < 600) {
-                // 0-599dp: "phone" UI with a separate status & navigation bar
-                sDeviceType =  DEVICE_PHONE;
-            } else if (shortSizeDp < 720) {
-                // 600-719dp: "phone" UI with modifications for larger screens
-                sDeviceType = DEVICE_HYBRID;
-            } else {
-                // 720dp: "tablet" UI with a single combined status & navigation bar
-                sDeviceType = DEVICE_TABLET;
-            }
-        }
-        return sDeviceType;
-    }
-
     public static boolean isPhone(Context context) {
-        return getScreenType(context) == DEVICE_PHONE;
+        return DeviceClassResolver.getInstance(context).getDeviceClass(context)
+                == DeviceClassResolver.DEVICE_PHONE;
     }
 
     public static boolean isHybrid(Context context) {
-        return getScreenType(context) == DEVICE_HYBRID;
+        return DeviceClassResolver.getInstance(context).getDeviceClass(context)
+                == DeviceClassResolver.DEVICE_HYBRID;
     }
 
     public static boolean isTablet(Context context) {
-        return getScreenType(context) == DEVICE_TABLET;
+        return DeviceClassResolver.getInstance(context).getDeviceClass(context)
+                == DeviceClassResolver.DEVICE_TABLET;
     }
 
     /**
@@ -208,87 +164,24 @@ public final class Utils {
     }
 
     public static boolean deviceSupportsFlashLight(Context context) {
-        CameraManager cameraManager = (CameraManager) context.getSystemService(
-                Context.CAMERA_SERVICE);
-        try {
-            String[] ids = cameraManager.getCameraIdList();
-            for (String id : ids) {
-                CameraCharacteristics c = cameraManager.getCameraCharacteristics(id);
-                Boolean flashAvailable = c.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
-                Integer lensFacing = c.get(CameraCharacteristics.LENS_FACING);
-                if (flashAvailable != null
-                        && flashAvailable
-                        && lensFacing != null
-                        && lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
-                    return true;
-                }
-            }
-        } catch (CameraAccessException e) {
-            // Ignore
-        }
-        return false;
+        return DeviceCapabilities.getInstance(context).hasFlashlight();
     }
 
-    public static boolean isBlurSupported() {
-        boolean blurSupportedSysProp = SystemProperties
-            .getBoolean("ro.surface_flinger.supports_background_blur", false);
-        boolean blurDisabledSysProp = SystemProperties
-            .getBoolean("persist.sys.sf.disable_blurs", false);
-        return blurSupportedSysProp && !blurDisabledSysProp && ActivityManager.isHighEndGfx();
+    public static boolean isBlurSupported(Context context) {
+        return DeviceCapabilities.getInstance(context).isBlurSupported();
     }
 
+    /**
+     * Restarts SystemUI once requests stop coming in or the user leaves Settings.
+     */
     public static void restartSystemUi(Context context) {
-        Toast.makeText(context, R.string.systemui_restart_toast, Toast.LENGTH_LONG).show();
-        new RestartSystemUiTask(context).execute();
+        SystemUiRestarter.getInstance(context).requestRestart();
     }
 
     public static void showSystemUiRestartDialog(Context context) {
        restartSystemUi(context);
     }
 
-    private static class RestartSystemUiTask extends AsyncTask<Void, Void, Void> {
-        private Context mContext;
-
-        public RestartSystemUiTask(Context context) {
-            super();
-            mContext = context;
-        }
-
-        @Override
-        protected Void doInBackground(Void... params) {
-              try {
-        	  Thread.sleep(3000); //3s
-              } catch (InterruptedException ie) {}
-
-            try {
-                ActivityManager am =
-                        (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
-                IActivityManager ams = ActivityManager.getService();
-                for (ActivityManager.RunningAppProcessInfo app: am.getRunningAppProcesses()) {
-                    if ("com.android.systemui".equals(app.processName)) {
-                        ams.killApplicationProcess(app.processName, app.uid);
-                        break;
-                    }
-                }
-                //Class ActivityManagerNative = Class.forName("android.app.ActivityManagerNative");
-                //Method getDefault = ActivityManagerNative.getDeclaredMethod("getDefault", null);
-                //Object amn = getDefault.invoke(null, null);
-                //Method killApplicationProcess = amn.getClass().getDeclaredMethod("killApplicationProcess", String.class, int.class);
-                //mContext.stopService(new Intent().setComponent(new ComponentName("com.android.systemui", "com.android.systemui.SystemUIService")));
-                //am.killBackgroundProcesses("com.android.systemui");
-                //for (ActivityManager.RunningAppProcessInfo app : am.getRunningAppProcesses()) {
-                //    if ("com.android.systemui".equals(app.processName)) {
-                //        killApplicationProcess.invoke(amn, app.processName, app.uid);
-                //        break;
-                //    }
-                //}
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            return null;
-        }
-    }
-
     public static int getThemeAccentColor (final Context context) {
         final TypedValue value = new TypedValue ();
         context.getTheme ().resolveAttribute (android.R.attr.colorAccent, value, true);